@@ -50,6 +50,7 @@ public class CompilationServiceImpl implements CompilationService {
     }
 
     @Override
+    @Transactional
     public CompilationDto updateCompilation(Long compId, UpdateCompilationRequest updateCompilationRequest) {
         Compilation compilation = checkCompilationExistsById(compId);
 
@@ -69,6 +70,7 @@ public class CompilationServiceImpl implements CompilationService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<CompilationDto> getCompilations(Boolean pinned, PageRequest pageable) {
         if (pinned != null) {
             return compilationRepository.findAllByPinned(pinned, pageable)
@@ -83,6 +85,7 @@ public class CompilationServiceImpl implements CompilationService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public CompilationDto getCompilationById(Long compId) {
         return CompilationMapper.toDto(checkCompilationExistsById(compId));
     }
@@ -7,11 +7,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.practicum.comment.service.CommentService;
 import ru.practicum.event.dto.EventFullDto;
+import ru.practicum.event.dto.EventPage;
 import ru.practicum.event.dto.UpdateEventAdminRequest;
 import ru.practicum.event.model.Event.State;
+import ru.practicum.event.model.EventCursor;
 import ru.practicum.event.service.EventService;
 
 import java.time.LocalDateTime;
@@ -27,16 +30,23 @@ public class AdminEventController {
     private static final String FORMATTER = "yyyy-MM-dd HH:mm:ss";
 
     @GetMapping
-    public List<EventFullDto> getEvents(@RequestParam(required = false) List<Long> users,
+    public ResponseEntity<List<EventFullDto>> getEvents(@RequestParam(required = false) List<Long> users,
                                   @RequestParam(required = false) List<State> states,
                                   @RequestParam(required = false) List<Long> categoriesId,
                                   @RequestParam(required = false) @DateTimeFormat(pattern = FORMATTER) LocalDateTime rangeStart,
                                   @RequestParam(required = false) @DateTimeFormat(pattern = FORMATTER) LocalDateTime rangeEnd,
                                   @PositiveOrZero @RequestParam(defaultValue = "0") int from,
-                                  @Positive @RequestParam(defaultValue = "10") int size) {
+                                  @Positive @RequestParam(defaultValue = "10") int size,
+                                  @RequestParam(required = false) String cursor) {
         log.info("Call admin getEvents endpoint.");
-        return eventService.findAllEventsByAdmin(users, states, categoriesId, rangeStart, rangeEnd,
-                PageRequest.of(from / size, size));
+        EventCursor after = cursor == null ? null : EventCursor.decode(cursor);
+        EventPage<EventFullDto> page = eventService.findAllEventsByAdmin(users, states, categoriesId, rangeStart,
+                rangeEnd, after, PageRequest.of(after == null ? from / size : 0, size));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(EventCursor.HEADER, page.getNextCursor());
+        }
+        return response.body(page.getEvents());
     }
 
     @PatchMapping("/{eventId}")
@@ -7,6 +7,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -15,8 +16,10 @@ import org.springframework.web.bind.annotation.RestController;
 import ru.practicum.comment.dto.CommentDto;
 import ru.practicum.comment.service.CommentService;
 import ru.practicum.event.dto.EventFullDto;
+import ru.practicum.event.dto.EventPage;
 import ru.practicum.event.dto.EventShortDto;
 import ru.practicum.event.enums.Sort;
+import ru.practicum.event.model.EventCursor;
 import ru.practicum.event.service.EventService;
 
 
@@ -33,7 +36,7 @@ public class PublicEventController {
     private static final String FORMATTER = "yyyy-MM-dd HH:mm:ss";
 
     @GetMapping
-    public List<EventShortDto> getAllEvents(@RequestParam(required = false) String text,
+    public ResponseEntity<List<EventShortDto>> getAllEvents(@RequestParam(required = false) String text,
                                             @RequestParam(required = false) List<Long> categories,
                                             @RequestParam(required = false) Boolean paid,
                                             @RequestParam(required = false) @DateTimeFormat(pattern = FORMATTER) LocalDateTime rangeStart,
@@ -42,10 +45,18 @@ public class PublicEventController {
                                             @RequestParam(required = false) Sort sort,
                                             @PositiveOrZero @RequestParam(defaultValue = "0") int from,
                                             @Positive @RequestParam(defaultValue = "10") int size,
+                                            @RequestParam(required = false) String cursor,
                                             HttpServletRequest request) {
         log.info("Call public getAllEvents endpoint.");
-        return eventService.findAllEventsByPublic(text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort,
-                PageRequest.of(from / size, size), request);
+        // a cursor seeks past the previous page, from is only used without it
+        EventCursor after = cursor == null ? null : EventCursor.decode(cursor);
+        EventPage<EventShortDto> page = eventService.findAllEventsByPublic(text, categories, paid, rangeStart,
+                rangeEnd, onlyAvailable, sort, after, PageRequest.of(after == null ? from / size : 0, size), request);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(EventCursor.HEADER, page.getNextCursor());
+        }
+        return response.body(page.getEvents());
     }
 
     @GetMapping("/{id}")
@@ -0,0 +1,16 @@
+package ru.practicum.event.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class EventPage<T> {
+
+    private List<T> events;
+
+    // null when the page is the last one or the listing isn't ordered by event date
+    private String nextCursor;
+}
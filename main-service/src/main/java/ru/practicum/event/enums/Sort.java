@@ -2,5 +2,6 @@ package ru.practicum.event.enums;
 
 public enum Sort {
     EVENT_DATE,
-    VIEWS
+    VIEWS,
+    RELEVANCE
 }
@@ -27,7 +27,9 @@ public class Event {
     @JoinColumn(name = "category_id", referencedColumnName = "id")
     private Category category;
 
-    @Column(name = "confirmed_requests")
+    // inserted as 0 and then only changed by EventRepository's increment and decrement queries,
+    // so saving a stale or detached event can't overwrite a place taken meanwhile
+    @Column(name = "confirmed_requests", updatable = false)
     private Long confirmedRequests;
 
     @Column(name = "created_on", nullable = false)
@@ -0,0 +1,44 @@
+package ru.practicum.event.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.practicum.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position right after an event in the (eventDate, id) order of event listings. Clients get it as an opaque
+ * token in the {@value #HEADER} header and send it back to seek to the next page instead of skipping rows.
+ */
+@Getter
+@RequiredArgsConstructor
+public class EventCursor {
+    public static final String HEADER = "X-Next-Cursor";
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime eventDate;
+    private final Long id;
+
+    public static EventCursor after(Event event) {
+        return new EventCursor(event.getEventDate(), event.getId());
+    }
+
+    public String encode() {
+        String position = eventDate + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static EventCursor decode(String token) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = position.indexOf(SEPARATOR);
+            return new EventCursor(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.parseLong(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeException e) {
+            throw new ValidationException(String.format("Invalid cursor %s", token));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.event.model;
+
+public interface EventText {
+    Long getId();
+
+    String getTitle();
+
+    String getAnnotation();
+
+    String getDescription();
+}
@@ -2,16 +2,19 @@ package ru.practicum.event.repository;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventText;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface EventRepository extends JpaRepository<Event, Long> {
+public interface EventRepository extends JpaRepository<Event, Long>, EventSearchRepository {
     List<Event> findAllByInitiatorId(Long userId, Pageable page);
 
     List<Event> findAllByIdIn(List<Long> eventId);
@@ -23,37 +26,38 @@ public interface EventRepository extends JpaRepository<Event, Long> {
             "AND (:categories IS NULL OR e.category.id IN (:categories)) " +
             "AND (CAST(:rangeStart AS date) IS NULL OR e.eventDate >= :rangeStart) " +
             "AND (CAST(:rangeEnd AS date) IS NULL OR e.eventDate <= :rangeEnd) " +
-            "order by e.eventDate")
+            "AND (:afterId IS NULL OR e.eventDate > :afterDate " +
+            "OR (e.eventDate = :afterDate AND e.id > :afterId)) " +
+            "order by e.eventDate, e.id")
     List<Event> findByParams(
             @Param("users") List<Long> users,
             @Param("states") List<Event.State> states,
             @Param("categories") List<Long> categories,
             @Param("rangeStart") LocalDateTime rangeStart,
             @Param("rangeEnd") LocalDateTime rangeEnd,
+            @Param("afterDate") LocalDateTime afterDate,
+            @Param("afterId") Long afterId,
             Pageable pageable);
 
-    @Query("SELECT e " +
+    List<Event> findAllByCategoryId(Long catId);
+
+    @Query("SELECT e.id AS id, e.title AS title, e.annotation AS annotation, e.description AS description " +
             "FROM Event AS e " +
-            "WHERE " +
-            "(" +
-            ":text IS NULL " +
-            "OR LOWER(e.description) LIKE CONCAT('%', :text, '%') " +
-            "OR LOWER(e.annotation) LIKE CONCAT('%', :text, '%')" +
-            ")" +
-            "AND (:states IS NULL OR e.state IN (:states)) " +
-            "AND (:categories IS NULL OR e.category.id IN (:categories)) " +
-            "AND (:paid IS NULL OR e.paid = :paid) " +
-            "AND (CAST(:rangeStart AS date) IS NULL OR e.eventDate >= :rangeStart) " +
-            "AND (CAST(:rangeEnd AS date) IS NULL OR e.eventDate <= :rangeEnd) " +
-            "order by e.eventDate")
-    List<Event> findByParamsOrderByDate(
-            @Param("text") String text,
-            @Param("states") List<Event.State> states,
-            @Param("categories") List<Long> categories,
-            @Param("paid") Boolean paid,
-            @Param("rangeStart") LocalDateTime rangeStart,
-            @Param("rangeEnd") LocalDateTime rangeEnd,
-            Pageable pageable);
+            "WHERE e.state = :state")
+    Stream<EventText> streamTextsByState(@Param("state") Event.State state);
 
-    List<Event> findAllByCategoryId(Long catId);
+    // the limit is checked by the same statement, so concurrent sign-ups can't exceed it;
+    // participantsLimit = 0 means unlimited. Returns 0 when no place is left
+    @Modifying
+    @Query("UPDATE Event AS e " +
+            "SET e.confirmedRequests = e.confirmedRequests + 1 " +
+            "WHERE e.id = :eventId " +
+            "AND (e.participantsLimit = 0 OR e.confirmedRequests < e.participantsLimit)")
+    int incrementConfirmedRequests(@Param("eventId") Long eventId);
+
+    @Modifying
+    @Query("UPDATE Event AS e " +
+            "SET e.confirmedRequests = e.confirmedRequests - 1 " +
+            "WHERE e.id = :eventId AND e.confirmedRequests > 0")
+    int decrementConfirmedRequests(@Param("eventId") Long eventId);
 }
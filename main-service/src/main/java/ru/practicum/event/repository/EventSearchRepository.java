@@ -0,0 +1,23 @@
+package ru.practicum.event.repository;
+
+import org.springframework.data.domain.Pageable;
+import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventCursor;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface EventSearchRepository {
+    // candidateIds, when known, narrow the rows the text condition is checked on
+    List<Event> search(String text,
+                       Collection<Long> candidateIds,
+                       List<Event.State> states,
+                       List<Long> categories,
+                       Boolean paid,
+                       LocalDateTime rangeStart,
+                       LocalDateTime rangeEnd,
+                       boolean byRelevance,
+                       EventCursor after,
+                       Pageable pageable);
+}
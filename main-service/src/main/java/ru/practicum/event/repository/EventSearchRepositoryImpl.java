@@ -0,0 +1,188 @@
+package ru.practicum.event.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventCursor;
+import ru.practicum.event.search.EventTextIndex;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Public event search. On PostgreSQL the text is matched against the {@code search_vector} column,
+ * a GIN indexed tsvector over title, annotation and description, and results can be ranked by relevance.
+ * Other databases, H2 in tests, scan annotation and description with LIKE and always order by event date.
+ * Candidate ids from the text index only narrow the full-text query, which still decides what matches,
+ * so results don't depend on the index. LIKE matches inside words, where the index can't help, and ignores them.
+ * Date ordered results can be continued from a cursor, which seeks on (event_date, id) instead of an offset.
+ */
+@Slf4j
+public class EventSearchRepositoryImpl implements EventSearchRepository {
+    private static final String TEXT_CONFIG = "simple";
+    private static final String SELECT_IDS = "SELECT e.id FROM events AS e ";
+    private static final String MATCHES_QUERY = "WHERE e.search_vector @@ to_tsquery('" + TEXT_CONFIG + "', :query) ";
+    private static final String IN_CANDIDATES = "AND e.id IN (:candidates) ";
+    private static final String BY_RELEVANCE = "ORDER BY ts_rank(e.search_vector, " +
+            "to_tsquery('" + TEXT_CONFIG + "', :query)) DESC, e.event_date, e.id";
+    private static final String BY_DATE = "ORDER BY e.event_date, e.id";
+    private static final String SELECT_EVENTS = "SELECT e FROM Event AS e " +
+            "LEFT JOIN FETCH e.category " +
+            "LEFT JOIN FETCH e.initiator " +
+            "LEFT JOIN FETCH e.location ";
+
+    private final EntityManager entityManager;
+    private final boolean fullText;
+
+    public EventSearchRepositoryImpl(EntityManager entityManager, DataSource dataSource) {
+        this.entityManager = entityManager;
+        String product;
+        try {
+            product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Can't detect database product", e);
+        }
+        this.fullText = "PostgreSQL".equalsIgnoreCase(product);
+        log.info("Event text search uses {}", fullText ? "PostgreSQL full-text search" : "LIKE on " + product);
+    }
+
+    // its own read-only transaction, so the listing holds a connection only for the search
+    @Override
+    @Transactional(readOnly = true)
+    public List<Event> search(String text,
+                              Collection<Long> candidateIds,
+                              List<Event.State> states,
+                              List<Long> categories,
+                              Boolean paid,
+                              LocalDateTime rangeStart,
+                              LocalDateTime rangeEnd,
+                              boolean byRelevance,
+                              EventCursor after,
+                              Pageable pageable) {
+        String query = fullText ? toTsQuery(text) : null;
+        if (query == null) {
+            return searchByLike(text, states, categories, paid, rangeStart, rangeEnd, after, pageable);
+        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("query", query);
+        String sql = SELECT_IDS + MATCHES_QUERY;
+        // an index without the words falls back to the plain full-text query rather than answering nothing
+        if (candidateIds != null && !candidateIds.isEmpty()) {
+            sql += IN_CANDIDATES;
+            params.put("candidates", candidateIds);
+        }
+        sql += filters("e.event_state", "e.category_id", "e.paid", "e.event_date",
+                states, categories, paid, rangeStart, rangeEnd, after, params, true)
+                + (byRelevance ? BY_RELEVANCE : BY_DATE);
+        Query ids = entityManager.createNativeQuery(sql, Long.class);
+        params.forEach(ids::setParameter);
+        List<Long> page;
+        try (Stream<?> rows = page(ids, pageable).getResultStream()) {
+            page = rows.map(id -> ((Number) id).longValue()).toList();
+        }
+        if (page.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Integer> order = new HashMap<>();
+        for (int i = 0; i < page.size(); i++) {
+            order.put(page.get(i), i);
+        }
+        return entityManager.createQuery(SELECT_EVENTS + "WHERE e.id IN (:ids)", Event.class)
+                .setParameter("ids", page)
+                .getResultStream()
+                .sorted(Comparator.comparing(event -> order.get(event.getId())))
+                .collect(Collectors.toList());
+    }
+
+    private List<Event> searchByLike(String text,
+                                     List<Event.State> states,
+                                     List<Long> categories,
+                                     Boolean paid,
+                                     LocalDateTime rangeStart,
+                                     LocalDateTime rangeEnd,
+                                     EventCursor after,
+                                     Pageable pageable) {
+        Map<String, Object> params = new HashMap<>();
+        StringBuilder jpql = new StringBuilder(SELECT_EVENTS).append("WHERE 1 = 1 ");
+        if (text != null && !text.isBlank()) {
+            jpql.append("AND (LOWER(e.description) LIKE :text OR LOWER(e.annotation) LIKE :text) ");
+            params.put("text", "%" + text.toLowerCase() + "%");
+        }
+        jpql.append(filters("e.state", "e.category.id", "e.paid", "e.eventDate",
+                states, categories, paid, rangeStart, rangeEnd, after, params, false));
+        jpql.append("ORDER BY e.eventDate, e.id");
+        TypedQuery<Event> events = entityManager.createQuery(jpql.toString(), Event.class);
+        params.forEach(events::setParameter);
+        return page(events, pageable).getResultList();
+    }
+
+    // the same filters in SQL and in JPQL, enum states are compared by name in SQL;
+    // the cursor is a row comparison in SQL, so PostgreSQL seeks the (event_date, id) index
+    private static String filters(String state, String category, String paidColumn, String date,
+                                  List<Event.State> states, List<Long> categories, Boolean paid,
+                                  LocalDateTime rangeStart, LocalDateTime rangeEnd, EventCursor after,
+                                  Map<String, Object> params, boolean nativeQuery) {
+        StringBuilder filters = new StringBuilder();
+        if (states != null && !states.isEmpty()) {
+            filters.append("AND ").append(state).append(" IN (:states) ");
+            params.put("states", nativeQuery ? states.stream().map(Enum::name).toList() : states);
+        }
+        if (categories != null && !categories.isEmpty()) {
+            filters.append("AND ").append(category).append(" IN (:categories) ");
+            params.put("categories", categories);
+        }
+        if (paid != null) {
+            filters.append("AND ").append(paidColumn).append(" = :paid ");
+            params.put("paid", paid);
+        }
+        if (rangeStart != null) {
+            filters.append("AND ").append(date).append(" >= :rangeStart ");
+            params.put("rangeStart", rangeStart);
+        }
+        if (rangeEnd != null) {
+            filters.append("AND ").append(date).append(" <= :rangeEnd ");
+            params.put("rangeEnd", rangeEnd);
+        }
+        if (after != null) {
+            filters.append(nativeQuery
+                    ? "AND (" + date + ", e.id) > (:afterDate, :afterId) "
+                    : "AND (" + date + " > :afterDate OR (" + date + " = :afterDate AND e.id > :afterId)) ");
+            params.put("afterDate", after.getEventDate());
+            params.put("afterId", after.getId());
+        }
+        return filters.toString();
+    }
+
+    private static <Q extends Query> Q page(Q query, Pageable pageable) {
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return query;
+    }
+
+    // every word of the text has to start a word of the event, like "jazz conc" finding "Jazz concert";
+    // text without letters or digits has no words and is searched with LIKE
+    private static String toTsQuery(String text) {
+        String query = EventTextIndex.words(text).stream()
+                .map(word -> word + ":*")
+                .collect(Collectors.joining(" & "));
+        return query.isEmpty() ? null : query;
+    }
+}
@@ -0,0 +1,261 @@
+package ru.practicum.event.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventText;
+import ru.practicum.event.repository.EventRepository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index from the words of title, annotation and description to the ids of PUBLISHED events.
+ * It is built at startup and follows admin updates after they commit. A search word matches the words it starts,
+ * as the full-text search does. The index only narrows the candidates: the database still checks the text,
+ * the state, category, paid and date filters, so an id that is no longer published or no longer matches
+ * is dropped there.
+ */
+@Slf4j
+@Component
+public class EventTextIndex implements SmartInitializingSingleton {
+    // rough heap cost of a word entry and of one id in a posting set, for the memory gauge
+    private static final int WORD_BYTES = 96;
+    private static final int POSTING_BYTES = 48;
+
+    private final EventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxCandidates;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Timer rebuildTimer;
+    private final Counter indexedSearches;
+    private final Counter fallbackSearches;
+
+    private NavigableMap<String, Set<Long>> postings = new TreeMap<>();
+    private Map<Long, Set<String>> wordsByEvent = new HashMap<>();
+    private long postingCount;
+    private long wordChars;
+    private volatile boolean ready;
+
+    public EventTextIndex(EventRepository eventRepository,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${ewm.search.index.enabled:true}") boolean enabled,
+                          @Value("${ewm.search.index.max-candidates:1000}") int maxCandidates) {
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.maxCandidates = maxCandidates;
+
+        this.rebuildTimer = Timer.builder("ewm.search.index.rebuild")
+                .description("Time to build the event text index from the database")
+                .register(meterRegistry);
+        this.indexedSearches = Counter.builder("ewm.search.index.searches")
+                .description("Text searches of public events")
+                .tag("result", "indexed")
+                .register(meterRegistry);
+        this.fallbackSearches = Counter.builder("ewm.search.index.searches")
+                .description("Text searches of public events")
+                .tag("result", "database")
+                .register(meterRegistry);
+        Gauge.builder("ewm.search.index.events", this, index -> index.read(() -> index.wordsByEvent.size()))
+                .description("Published events in the text index")
+                .register(meterRegistry);
+        Gauge.builder("ewm.search.index.words", this, index -> index.read(() -> index.postings.size()))
+                .description("Distinct words in the text index")
+                .register(meterRegistry);
+        Gauge.builder("ewm.search.index.memory", this, EventTextIndex::estimatedBytes)
+                .description("Estimated heap used by the text index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    public void rebuild() {
+        long started = System.nanoTime();
+        NavigableMap<String, Set<Long>> newPostings = new TreeMap<>();
+        Map<Long, Set<String>> newWordsByEvent = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<EventText> texts = eventRepository.streamTextsByState(Event.State.PUBLISHED)) {
+                texts.forEach(text -> {
+                    Set<String> words = words(text.getTitle(), text.getAnnotation(), text.getDescription());
+                    newWordsByEvent.put(text.getId(), words);
+                    words.forEach(word -> newPostings.computeIfAbsent(word, w -> new HashSet<>()).add(text.getId()));
+                });
+            }
+        });
+        long newPostingCount = newPostings.values().stream().mapToLong(Set::size).sum();
+        long newWordChars = newPostings.keySet().stream().mapToLong(String::length).sum();
+        write(() -> {
+            postings = newPostings;
+            wordsByEvent = newWordsByEvent;
+            postingCount = newPostingCount;
+            wordChars = newWordChars;
+            ready = true;
+        });
+        long elapsed = System.nanoTime() - started;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Event text index built: {} events, {} words in {} ms",
+                newWordsByEvent.size(), newPostings.size(), elapsed / 1_000_000);
+    }
+
+    // applied after the surrounding transaction commits, a rolled back update leaves the index as it was
+    public void update(Event event) {
+        if (!enabled) {
+            return;
+        }
+        long id = event.getId();
+        Set<String> words = event.getState() == Event.State.PUBLISHED
+                ? words(event.getTitle(), event.getAnnotation(), event.getDescription())
+                : Set.of();
+        Runnable apply = () -> write(() -> {
+            remove(id);
+            if (!words.isEmpty()) {
+                add(id, words);
+            }
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    /**
+     * Ids of published events containing a word that starts with every word of the text,
+     * or empty when the database has to search: the index is off or not built yet,
+     * the text has no words or more than {@code ewm.search.index.max-candidates} events match.
+     */
+    public Optional<Set<Long>> find(String text) {
+        List<String> words = words(text);
+        if (!enabled || !ready || words.isEmpty()) {
+            fallbackSearches.increment();
+            return Optional.empty();
+        }
+        Set<Long> candidates = read(() -> {
+            Set<Long> matched = null;
+            for (String word : words) {
+                Set<Long> ids = new HashSet<>();
+                postings.subMap(word, true, word + Character.MAX_VALUE, false).values().forEach(ids::addAll);
+                if (matched == null) {
+                    matched = ids;
+                } else {
+                    matched.retainAll(ids);
+                }
+                if (matched.isEmpty()) {
+                    break;
+                }
+            }
+            return matched;
+        });
+        if (candidates.size() > maxCandidates) {
+            fallbackSearches.increment();
+            return Optional.empty();
+        }
+        indexedSearches.increment();
+        return Optional.of(candidates);
+    }
+
+    public static List<String> words(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return Arrays.stream(text.toLowerCase().split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .distinct()
+                .toList();
+    }
+
+    private static Set<String> words(String... texts) {
+        Set<String> words = new HashSet<>();
+        for (String text : texts) {
+            words.addAll(words(text));
+        }
+        return words;
+    }
+
+    private void add(long id, Set<String> words) {
+        wordsByEvent.put(id, words);
+        for (String word : words) {
+            Set<Long> ids = postings.computeIfAbsent(word, w -> new HashSet<>());
+            if (ids.isEmpty()) {
+                wordChars += word.length();
+            }
+            ids.add(id);
+            postingCount++;
+        }
+    }
+
+    private void remove(long id) {
+        Set<String> words = wordsByEvent.remove(id);
+        if (words == null) {
+            return;
+        }
+        for (String word : words) {
+            Set<Long> ids = postings.get(word);
+            if (ids != null && ids.remove(id)) {
+                postingCount--;
+                if (ids.isEmpty()) {
+                    postings.remove(word);
+                    wordChars -= word.length();
+                }
+            }
+        }
+    }
+
+    private double estimatedBytes() {
+        return read(() -> (double) postings.size() * WORD_BYTES + wordChars + postingCount * POSTING_BYTES
+                + (double) wordsByEvent.size() * WORD_BYTES);
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Runnable writer) {
+        lock.writeLock().lock();
+        try {
+            writer.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.data.domain.Pageable;
 import ru.practicum.event.dto.*;
 import ru.practicum.event.enums.Sort;
 import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventCursor;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -23,25 +24,27 @@ public interface EventService {
                                    Long eventId,
                                    UpdateUserEventRequest userRequest);
 
-    List<EventFullDto> findAllEventsByAdmin(List<Long> userIds,
-                                            List<Event.State> states,
-                                            List<Long> categoryIds,
-                                            LocalDateTime start,
-                                            LocalDateTime end,
-                                            Pageable pageable);
+    EventPage<EventFullDto> findAllEventsByAdmin(List<Long> userIds,
+                                                 List<Event.State> states,
+                                                 List<Long> categoryIds,
+                                                 LocalDateTime start,
+                                                 LocalDateTime end,
+                                                 EventCursor after,
+                                                 Pageable pageable);
 
     EventFullDto updateEventByAdmin(Long eventId, UpdateEventAdminRequest request);
 
     EventFullDto findEventById(Long id, HttpServletRequest request);
 
-    List<EventShortDto> findAllEventsByPublic(String text,
-                                              List<Long> categories,
-                                              Boolean paid,
-                                              LocalDateTime rangeStart,
-                                              LocalDateTime rangeEnd,
-                                              Boolean onlyAvailable,
-                                              Sort sort,
-                                              Pageable pageable,
-                                              HttpServletRequest request);
+    EventPage<EventShortDto> findAllEventsByPublic(String text,
+                                                   List<Long> categories,
+                                                   Boolean paid,
+                                                   LocalDateTime rangeStart,
+                                                   LocalDateTime rangeEnd,
+                                                   Boolean onlyAvailable,
+                                                   Sort sort,
+                                                   EventCursor after,
+                                                   Pageable pageable,
+                                                   HttpServletRequest request);
 
 }
@@ -14,21 +14,21 @@ import ru.practicum.event.dto.*;
 import ru.practicum.event.enums.Sort;
 import ru.practicum.event.mapper.EventMapper;
 import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventCursor;
 import ru.practicum.event.repository.EventRepository;
+import ru.practicum.event.search.EventTextIndex;
 import ru.practicum.exception.ConflictException;
 import ru.practicum.exception.ObjectNotFoundException;
 import ru.practicum.exception.ValidationException;
 import ru.practicum.location.repository.LocationRepository;
-import ru.practicum.request.model.Request;
-import ru.practicum.request.repository.RequestRepository;
 import ru.practicum.user.model.User;
 import ru.practicum.user.service.UserService;
 
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import static ru.practicum.event.enums.Sort.RELEVANCE;
 import static ru.practicum.event.enums.Sort.VIEWS;
 
 @Service
@@ -43,11 +43,11 @@ public class EventServiceImpl implements EventService {
     private static final int TITLE_MAX = 120;
     private static final int TITLE_MIN = 3;
     private final EventRepository eventRepository;
-    private final RequestRepository requestRepository;
     private final UserService userService;
     private final CategoryService categoryService;
     private final LocationRepository locationRepository;
     private final StatsClient statsClient;
+    private final EventTextIndex eventTextIndex;
     private static final LocalDateTime CURRENT_TIME = LocalDateTime.now();
 
     @Override
@@ -113,28 +113,14 @@ public class EventServiceImpl implements EventService {
     }
 
     @Override
-    public List<EventFullDto> findAllEventsByAdmin(List<Long> users,
-                                                   List<Event.State> states,
-                                                   List<Long> categories,
-                                                   LocalDateTime rangeStart,
-                                                   LocalDateTime rangeEnd,
-                                                   Pageable pageable) {
-        if (states == null && rangeStart == null && rangeEnd == null) {
-            return eventRepository.findAll(pageable)
-                    .stream()
-                    .map(EventMapper::toDto)
-                    .collect(Collectors.toList());
-        }
-        if (states == null) {
-            states = Stream.of(Event.State.values())
-                    .collect(Collectors.toList());
-        }
-
-        rangeStart = rangeStart == null ? CURRENT_TIME.minusYears(5) : rangeStart;
-        rangeEnd = rangeEnd == null ? CURRENT_TIME.plusYears(5) : rangeEnd;
-
-
-        if (rangeStart.isAfter(rangeEnd)) {
+    public EventPage<EventFullDto> findAllEventsByAdmin(List<Long> users,
+                                                        List<Event.State> states,
+                                                        List<Long> categories,
+                                                        LocalDateTime rangeStart,
+                                                        LocalDateTime rangeEnd,
+                                                        EventCursor after,
+                                                        Pageable pageable) {
+        if (rangeStart != null && rangeEnd != null && rangeStart.isAfter(rangeEnd)) {
             throw new ValidationException("Start can't be after the end");
         }
 
@@ -144,11 +130,13 @@ public class EventServiceImpl implements EventService {
                 categories,
                 rangeStart,
                 rangeEnd,
+                after == null ? null : after.getEventDate(),
+                after == null ? null : after.getId(),
                 pageable);
 
-        return events.stream()
+        return new EventPage<>(events.stream()
                 .map(EventMapper::toDto)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()), nextCursor(events, pageable));
     }
 
     @Override
@@ -180,11 +168,13 @@ public class EventServiceImpl implements EventService {
 
         log.info("CALL TO UPDATE EVENT: {}", event);
 
-        return EventMapper.toDto(eventRepository.save(updateEvent(event, request)));
+        Event savedEvent = eventRepository.save(updateEvent(event, request));
+        eventTextIndex.update(savedEvent);
+        return EventMapper.toDto(savedEvent);
     }
 
+    // no transaction: the connection is back in the pool before the stats server is called
     @Override
-    @Transactional
     public EventFullDto findEventById(Long eventId, HttpServletRequest request) {
         Event event = checkEventExistsById(eventId);
 
@@ -192,7 +182,7 @@ public class EventServiceImpl implements EventService {
             throw new ObjectNotFoundException(String.format("Event %d is not published", event.getId()));
         }
 
-        statsClient.postHit(APP_NAME, request.getRequestURI(), request.getRemoteAddr(), CURRENT_TIME);
+        statsClient.postHit(APP_NAME, request.getRequestURI(), request.getRemoteAddr(), LocalDateTime.now());
         List<ViewStatsDto> viewStatsList = statsClient.getStats(LocalDateTime.now().minusYears(5),
                 LocalDateTime.now().plusYears(5),
                 List.of(eventId.toString()), true);
@@ -201,54 +191,67 @@ public class EventServiceImpl implements EventService {
                 .filter(s -> Objects.equals(s.getUri(), request.getRequestURI()))
                 .count();
 
-        event.setViews(hits + 1);
-        event.setConfirmedRequests((long) requestRepository.findAllByEventIdInAndStatus(List.of(eventId),
-                Request.RequestStatus.CONFIRMED).size());
-        return EventMapper.toDto(eventRepository.save(event));
+        // nothing is written back: confirmed_requests belongs to the request counters
+        EventFullDto dto = EventMapper.toDto(event);
+        dto.setViews(hits + 1);
+        return dto;
     }
 
+    // no transaction: the connection is back in the pool before the stats server is called
     @Override
-    public List<EventShortDto> findAllEventsByPublic(String text,
-                                                     List<Long> categories,
-                                                     Boolean paid,
-                                                     LocalDateTime rangeStart,
-                                                     LocalDateTime rangeEnd,
-                                                     Boolean onlyAvailable,
-                                                     Sort sort,
-                                                     Pageable pageable,
-                                                     HttpServletRequest request) {
+    public EventPage<EventShortDto> findAllEventsByPublic(String text,
+                                                          List<Long> categories,
+                                                          Boolean paid,
+                                                          LocalDateTime rangeStart,
+                                                          LocalDateTime rangeEnd,
+                                                          Boolean onlyAvailable,
+                                                          Sort sort,
+                                                          EventCursor after,
+                                                          Pageable pageable,
+                                                          HttpServletRequest request) {
         rangeStart = rangeStart == null ? CURRENT_TIME : rangeStart;
         rangeEnd = rangeEnd == null ? CURRENT_TIME.plusYears(15) : rangeEnd;
         text = text == null ? "" : text;
 
         checkDateTimeOfStartAndEnd(rangeStart, rangeEnd);
+        if (after != null && sort == RELEVANCE) {
+            throw new ValidationException("Cursor can only continue events sorted by date");
+        }
 
-        List<Event> events = eventRepository.findByParamsOrderByDate(
-                text.toLowerCase(),
+        List<Event> events = eventRepository.search(
+                text,
+                text.isBlank() ? null : eventTextIndex.find(text).orElse(null),
                 List.of(Event.State.PUBLISHED),
                 categories,
                 paid,
                 rangeStart,
                 rangeEnd,
+                sort == RELEVANCE,
+                after,
                 pageable);
+        String nextCursor = sort == RELEVANCE ? null : nextCursor(events, pageable);
 
-        statsClient.postHit(APP_NAME, request.getRequestURI(), request.getRemoteAddr(), CURRENT_TIME);
-        List<Event> eventList = setViewsAndConfirmedRequests(events);
+        statsClient.postHit(APP_NAME, request.getRequestURI(), request.getRemoteAddr(), LocalDateTime.now());
+        if (onlyAvailable) {
+            events = events.stream()
+                    .filter(event -> event.getParticipantsLimit() == 0
+                            || event.getConfirmedRequests() < event.getParticipantsLimit())
+                    .toList();
+        }
+        Map<Long, Long> views = getViews(events);
+
+        List<EventShortDto> eventList = events.stream()
+                .map(event -> {
+                    EventShortDto dto = EventMapper.toShortDto(event);
+                    dto.setViews(views.getOrDefault(event.getId(), 0L));
+                    return dto;
+                })
+                .collect(Collectors.toList());
 
         if (sort != null && sort.equals(VIEWS)) {
             eventList.sort((e1, e2) -> e2.getViews().compareTo(e1.getViews()));
         }
-
-        if (onlyAvailable) {
-            return eventList.stream()
-                    .filter(event -> event.getParticipantsLimit() <= event.getConfirmedRequests())
-                    .map(EventMapper::toShortDto)
-                    .collect(Collectors.toList());
-        } else {
-            return eventList.stream()
-                    .map(EventMapper::toShortDto)
-                    .collect(Collectors.toList());
-        }
+        return new EventPage<>(eventList, nextCursor);
     }
 
     @Override
@@ -258,6 +261,14 @@ public class EventServiceImpl implements EventService {
         );
     }
 
+    // taken before any filtering in memory, a full page is followed by the events after its last one
+    private static String nextCursor(List<Event> events, Pageable pageable) {
+        if (pageable.isUnpaged() || events.size() < pageable.getPageSize()) {
+            return null;
+        }
+        return EventCursor.after(events.get(events.size() - 1)).encode();
+    }
+
     private void checkEventOwner(Event event, User user) {
         if (!event.getInitiator().equals(user)) {
             throw new ObjectNotFoundException(String.format("User %s not the owner of the event %d",
@@ -343,36 +354,21 @@ public class EventServiceImpl implements EventService {
         }
     }
 
-    private List<Event> setViewsAndConfirmedRequests(List<Event> events) {
-        List<Long> eventIds = events
-                .stream()
-                .map(Event::getId)
-                .toList();
-
+    // views are counted by the stats server for the event page uris, /events/{id}
+    private Map<Long, Long> getViews(List<Event> events) {
+        if (events.isEmpty()) {
+            return Collections.emptyMap();
+        }
         List<ViewStatsDto> viewStatsList = statsClient
                 .getStats(LocalDateTime.now().minusYears(5),
                 LocalDateTime.now().plusYears(5),
-                eventIds.stream().map(String::valueOf).collect(Collectors.toList()), false);
-        Map<Long, Long> views;
-        if (viewStatsList != null && !viewStatsList.isEmpty()) {
-            views = viewStatsList
-                    .stream()
-                    .collect(Collectors.toMap(this::getEventIdFromURI, ViewStatsDto::getHits));
-        } else {
-            views = Collections.emptyMap();
+                events.stream().map(event -> "/events/" + event.getId()).collect(Collectors.toList()), false);
+        if (viewStatsList == null || viewStatsList.isEmpty()) {
+            return Collections.emptyMap();
         }
-
-        events.forEach(event ->
-                event.setViews(views.getOrDefault(event.getId(), 0L)));
-
-        events.forEach(event ->
-                event.setConfirmedRequests((long) requestRepository.findAllByEventIdInAndStatus(new ArrayList<>(eventIds),
-                        Request.RequestStatus.CONFIRMED).size()));
-
-        return events
+        return viewStatsList
                 .stream()
-                .map(eventRepository::save)
-                .collect(Collectors.toList());
+                .collect(Collectors.toMap(this::getEventIdFromURI, ViewStatsDto::getHits, Long::sum));
     }
 
     private Long getEventIdFromURI(ViewStatsDto viewStats) {
@@ -3,6 +3,7 @@ package ru.practicum.request.service;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import ru.practicum.event.model.Event;
 import ru.practicum.event.repository.EventRepository;
@@ -69,6 +70,7 @@ public class RequestServiceImpl implements RequestService {
         if (event.getState() != PUBLISHED) {
             throw new ConflictException("You can participate only in published events");
         }
+        // a fast answer for a full event; incrementConfirmedRequests below is the check that holds under concurrency
         if (event.getParticipantsLimit() > 0) {
             if (event.getConfirmedRequests() >= event.getParticipantsLimit()) {
                 throw new ConflictException("Participation limit is reached");
@@ -77,11 +79,16 @@ public class RequestServiceImpl implements RequestService {
             request.setStatus(Request.RequestStatus.CONFIRMED);
         }
 
-        if (request.getStatus() == CONFIRMED) {
-            event.setConfirmedRequests(event.getConfirmedRequests() + 1);
-            eventRepository.save(event);
+        try {
+            request = requestRepository.saveAndFlush(request);
+        } catch (DataIntegrityViolationException e) {
+            throw new ConflictException("Repeated request!");
         }
-        return RequestMapper.toDto(requestRepository.save(request));
+        // the event row stays locked until commit, so the place is taken last
+        if (request.getStatus() == CONFIRMED && eventRepository.incrementConfirmedRequests(eventId) == 0) {
+            throw new ConflictException("Participation limit is reached");
+        }
+        return RequestMapper.toDto(request);
     }
 
     @Override
@@ -94,6 +101,9 @@ public class RequestServiceImpl implements RequestService {
             throw new ConflictException("You can cancel only your request.");
         }
 
+        if (request.getStatus() == CONFIRMED) {
+            eventRepository.decrementConfirmedRequests(request.getEvent().getId());
+        }
         request.setStatus(Request.RequestStatus.CANCELED);
         return RequestMapper.toDto(requestRepository.save(request));
     }
@@ -112,6 +122,7 @@ public class RequestServiceImpl implements RequestService {
                     event.getInitiator().getId(), user.getId()));
             throw new ValidationException("Only initiator can accept the request");
         }
+        // fast answer only, each confirmation still takes its place with incrementConfirmedRequests
         if (event.getParticipantsLimit() <= event.getConfirmedRequests() && event.getParticipantsLimit() != 0) {
             throw new ConflictException("Participation limit is reached");
         }
@@ -175,12 +186,11 @@ public class RequestServiceImpl implements RequestService {
             if (!request.getStatus().equals(PENDING)) {
                 throw new ConflictException("Event status must be PENDING");
             }
-            if (event.getParticipantsLimit() <= event.getConfirmedRequests()) {
+            if (eventRepository.incrementConfirmedRequests(event.getId()) == 0) {
                 request.setStatus(REJECTED);
                 rejected.add(RequestMapper.toDto(request));
             } else {
                 request.setStatus(CONFIRMED);
-                event.setConfirmedRequests(event.getConfirmedRequests() + 1);
                 confirmed.add(RequestMapper.toDto(request));
             }
             requestRepository.save(request);
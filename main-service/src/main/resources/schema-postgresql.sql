@@ -0,0 +1,7 @@
+alter table events add column if not exists search_vector tsvector generated always as (
+    setweight(to_tsvector('simple', title), 'A') ||
+    setweight(to_tsvector('simple', annotation), 'B') ||
+    setweight(to_tsvector('simple', event_description), 'C')
+) stored;
+
+create index if not exists idx_events_search_vector on events using gin (search_vector);
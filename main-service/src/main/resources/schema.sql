@@ -40,7 +40,7 @@ create table if not exists events(
 );
 
 create index idx_events_initiator_id on events(initiator_id);
-create index idx_events_event_date on events(event_date);
+create index idx_events_event_date_id on events(event_date, id);
 create index idx_events_title on events(title);
 create index idx_events_state on events(event_state);
 
@@ -50,6 +50,7 @@ create table if not exists requests(
     event_id bigint not null,
     requester_id bigint not null,
     status varchar(20) not null,
+    constraint uq_requests_requester_event unique (requester_id, event_id),
     constraint fk_event_id foreign key (event_id) references events (id) on delete cascade,
     constraint fk_requester_id foreign key (requester_id) references users (id) on delete cascade
 );
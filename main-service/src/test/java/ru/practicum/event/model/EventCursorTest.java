@@ -0,0 +1,47 @@
+package ru.practicum.event.model;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventCursorTest {
+
+    @Test
+    void decodesEncodedPosition() {
+        LocalDateTime eventDate = LocalDateTime.of(2024, 5, 17, 19, 30, 0, 250_000_000);
+
+        EventCursor cursor = EventCursor.decode(new EventCursor(eventDate, 42L).encode());
+
+        assertThat(cursor.getEventDate()).isEqualTo(eventDate);
+        assertThat(cursor.getId()).isEqualTo(42L);
+    }
+
+    @Test
+    void encodesUrlSafeTokenWithoutPadding() {
+        String token = new EventCursor(LocalDateTime.of(2024, 5, 17, 19, 30), 7L).encode();
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThatThrownBy(() -> EventCursor.decode("not a cursor!"))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> EventCursor.decode(token("2024-05-17T19:30")))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> EventCursor.decode(token("yesterday|7")))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> EventCursor.decode(token("2024-05-17T19:30|seven")))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    private static String token(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+}
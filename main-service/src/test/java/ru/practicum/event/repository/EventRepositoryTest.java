@@ -0,0 +1,100 @@
+package ru.practicum.event.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.sql.init.platform=h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EventRepositoryTest {
+
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void takesPlacesUpToParticipantsLimit() {
+        long eventId = insertEvent(2, 0);
+
+        assertThat(increment(eventId)).isEqualTo(1);
+        assertThat(increment(eventId)).isEqualTo(1);
+        assertThat(increment(eventId)).isZero();
+        assertThat(confirmedRequests(eventId)).isEqualTo(2);
+    }
+
+    @Test
+    void takesPlacesWithoutLimitWhenLimitIsZero() {
+        long eventId = insertEvent(0, 100);
+
+        assertThat(increment(eventId)).isEqualTo(1);
+        assertThat(confirmedRequests(eventId)).isEqualTo(101);
+    }
+
+    @Test
+    void concurrentSignUpsDoNotExceedLimit() throws Exception {
+        long eventId = insertEvent(5, 0);
+        List<Callable<Integer>> signUps = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            signUps.add(() -> increment(eventId));
+        }
+
+        int taken = 0;
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (Future<Integer> result : executor.invokeAll(signUps)) {
+                taken += result.get();
+            }
+        }
+
+        assertThat(taken).isEqualTo(5);
+        assertThat(confirmedRequests(eventId)).isEqualTo(5);
+    }
+
+    @Test
+    void releasesPlacesButNeverBelowZero() {
+        long eventId = insertEvent(1, 1);
+
+        assertThat(decrement(eventId)).isEqualTo(1);
+        assertThat(decrement(eventId)).isZero();
+        assertThat(confirmedRequests(eventId)).isZero();
+        assertThat(increment(eventId)).isEqualTo(1);
+    }
+
+    private int increment(long eventId) {
+        return transactionTemplate.execute(status -> eventRepository.incrementConfirmedRequests(eventId));
+    }
+
+    private int decrement(long eventId) {
+        return transactionTemplate.execute(status -> eventRepository.decrementConfirmedRequests(eventId));
+    }
+
+    private long confirmedRequests(long eventId) {
+        return jdbcTemplate.queryForObject("SELECT confirmed_requests FROM events WHERE id = ?", Long.class, eventId);
+    }
+
+    private long insertEvent(int participantsLimit, long confirmedRequests) {
+        jdbcTemplate.update("INSERT INTO users (user_name, user_email) VALUES ('initiator', 'initiator@mail.ru')");
+        long userId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM users", Long.class);
+        jdbcTemplate.update("INSERT INTO events (annotation, confirmed_requests, created_on, event_description, " +
+                        "event_date, initiator_id, participants_limit, event_state, title) " +
+                        "VALUES ('annotation', ?, ?, 'description', ?, ?, ?, 'PUBLISHED', 'title')",
+                confirmedRequests, LocalDateTime.now(), LocalDateTime.now().plusDays(1), userId, participantsLimit);
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM events", Long.class);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.practicum.benchmark;
+
+import org.openjdk.jmh.Main;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs JMH with a JSON report named after the start time, so runs can be compared later.
+ * Any {@code -rf}/{@code -rff} option given on the command line takes precedence.
+ */
+public class Benchmarks {
+    private static final DateTimeFormatter REPORT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(List.of(args));
+        if (!options.contains("-rf") && !options.contains("-rff")) {
+            options.addAll(List.of("-rf", "json", "-rff",
+                    "jmh-result-" + LocalDateTime.now().format(REPORT_TIME) + ".json"));
+        }
+        Main.main(options.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,188 @@
+package ru.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.StatsServer;
+import ru.practicum.server.service.StatsService;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link StatsService#getStats} on an H2 file database with synthetic hits over the last 30 days.
+ * The database is kept in {@code java.io.tmpdir} and reused while it holds the requested number of hits;
+ * larger sets run with e.g. {@code -p hits=50000000}.
+ * Modes: {@code database} reads rollups and raw hits, {@code counters} answers from the in-memory counters,
+ * {@code cache} from the result cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class GetStatsBenchmark {
+    private static final String[] APPS = {"ewm-main-service", "ewm-admin-service"};
+    private static final int URIS = 10_000;
+    private static final int VISITORS = 200_000;
+    private static final int DAYS = 30;
+    private static final int BATCH = 10_000;
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, time_stamp) VALUES (?, ?, ?, ?)";
+    private static final String ROLL_UP = "INSERT INTO hits_hourly (app, uri, hour_start, hits) " +
+            "SELECT a.app, u.uri, h.hour_start, h.hits " +
+            "FROM (SELECT app_id, uri_id, DATE_TRUNC('HOUR', time_stamp) AS hour_start, COUNT(*) AS hits " +
+            "FROM hits GROUP BY app_id, uri_id, DATE_TRUNC('HOUR', time_stamp)) AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id";
+
+    @Param({"1000000", "10000000"})
+    private int hits;
+
+    @Param({"database", "counters", "cache"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+    private StatsService statsService;
+    private List<String> popularUris;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String url = "jdbc:h2:file:" + Path.of(System.getProperty("java.io.tmpdir"), "stats-benchmark-" + hits)
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            if (countHits(connection) != hits) {
+                load(connection);
+            }
+        }
+        context = new SpringApplicationBuilder(StatsServer.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(
+                        "--spring.datasource.url=" + url,
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.sql.init.mode=never",
+                        "--spring.sql.init.platform=h2",
+                        "--stats.counter.enabled=" + mode.equals("counters"),
+                        "--stats.cache.enabled=" + mode.equals("cache"),
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.transaction.interceptor=WARN");
+        statsService = context.getBean(StatsService.class);
+        popularUris = statsService.getStats(LocalDateTime.now().minusYears(5), LocalDateTime.now().plusYears(5),
+                        null, false, false, 10).stream()
+                .map(ViewStatsDto::getUri)
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> allStats() {
+        return statsService.getStats(LocalDateTime.now().minusYears(5), LocalDateTime.now().plusYears(5),
+                null, false, false, null);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> statsByUris() {
+        return statsService.getStats(LocalDateTime.now().minusYears(5), LocalDateTime.now().plusYears(5),
+                popularUris, false, false, null);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> uniqueStatsByUris() {
+        return statsService.getStats(LocalDateTime.now().minusYears(5), LocalDateTime.now().plusYears(5),
+                popularUris, true, false, null);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> lastDayStats() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        return statsService.getStats(now.minusDays(1), now.minusSeconds(1), null, false, false, null);
+    }
+
+    private static long countHits(Connection connection) {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM hits")) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    // uris and visitors are skewed, so a few events get most of the views like in production
+    private void load(Connection connection) throws SQLException {
+        ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema.sql"));
+        Random random = new Random(42);
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String app : APPS) {
+                statement.executeUpdate("INSERT INTO apps (app) VALUES ('" + app + "')");
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO uris (uri) VALUES (?)")) {
+            for (int i = 1; i <= URIS; i++) {
+                insert.setString(1, "/events/" + i);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_HIT)) {
+            for (int i = 0; i < hits; i++) {
+                insert.setInt(1, 1 + random.nextInt(APPS.length));
+                insert.setInt(2, 1 + skewed(random, URIS));
+                insert.setBytes(3, ByteBuffer.allocate(Integer.BYTES).putInt(skewed(random, VISITORS)).array());
+                insert.setTimestamp(4, Timestamp.valueOf(now.minusSeconds(random.nextInt(DAYS * 86_400))));
+                insert.addBatch();
+                if ((i + 1) % BATCH == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(ROLL_UP);
+        }
+        connection.commit();
+    }
+
+    private static int skewed(Random random, int bound) {
+        return (int) (bound * Math.pow(random.nextDouble(), 3));
+    }
+}
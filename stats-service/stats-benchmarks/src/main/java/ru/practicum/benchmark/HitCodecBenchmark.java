@@ -0,0 +1,86 @@
+package ru.practicum.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.dto.HitCodec;
+import ru.practicum.dto.HitEndpointDto;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary hit encoding with the JSON one the server reads by default.
+ * Run with {@code java -jar stats-benchmarks/target/benchmarks.jar HitCodecBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitCodecBenchmark {
+    private static final TypeReference<List<HitEndpointDto>> HIT_LIST = new TypeReference<>() {
+    };
+
+    @Param({"1", "500"})
+    private int hits;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private List<HitEndpointDto> batch;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        batch = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            batch.add(new HitEndpointDto("ewm-main-service", "/events/" + random.nextInt(10_000),
+                    "192.168." + random.nextInt(256) + "." + random.nextInt(256),
+                    now.minusSeconds(random.nextInt(86_400))));
+        }
+        json = mapper.writeValueAsBytes(batch);
+        binary = encodeBinary();
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return mapper.writeValueAsBytes(batch);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() throws IOException {
+        return HitCodec.encode(batch);
+    }
+
+    @Benchmark
+    public List<HitEndpointDto> decodeJson() throws IOException {
+        return mapper.readValue(json, HIT_LIST);
+    }
+
+    @Benchmark
+    public List<HitEndpointDto> decodeBinary() throws IOException {
+        return HitCodec.decode(binary);
+    }
+}
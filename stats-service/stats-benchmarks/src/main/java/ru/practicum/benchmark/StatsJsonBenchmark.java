@@ -0,0 +1,85 @@
+package ru.practicum.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.dto.HitEndpointDto;
+import ru.practicum.dto.ViewStatsDto;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON bodies of {@code POST /hit} and {@code GET /stats}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsJsonBenchmark {
+    private static final TypeReference<List<ViewStatsDto>> STATS_LIST = new TypeReference<>() {
+    };
+
+    @Param({"10", "1000"})
+    private int views;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private HitEndpointDto hit;
+    private byte[] hitJson;
+    private List<ViewStatsDto> stats;
+    private byte[] statsJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        hit = new HitEndpointDto("ewm-main-service", "/events/1", "192.168.0.1",
+                LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        hitJson = mapper.writeValueAsBytes(hit);
+        stats = new ArrayList<>(views);
+        for (int i = 0; i < views; i++) {
+            stats.add(new ViewStatsDto("ewm-main-service", "/events/" + i, (long) random.nextInt(1_000_000)));
+        }
+        statsJson = mapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public byte[] writeHit() throws IOException {
+        return mapper.writeValueAsBytes(hit);
+    }
+
+    @Benchmark
+    public HitEndpointDto readHit() throws IOException {
+        return mapper.readValue(hitJson, HitEndpointDto.class);
+    }
+
+    @Benchmark
+    public byte[] writeStats() throws IOException {
+        return mapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> readStats() throws IOException {
+        return mapper.readValue(statsJson, STATS_LIST);
+    }
+}
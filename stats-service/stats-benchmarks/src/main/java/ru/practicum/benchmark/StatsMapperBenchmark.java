@@ -0,0 +1,75 @@
+package ru.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.dto.HitEndpointDto;
+import ru.practicum.server.mapper.StatsMapper;
+import ru.practicum.server.model.Stats;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of incoming hits to the stored model and back, IP parsing included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsMapperBenchmark {
+    private static final int HITS = 500;
+
+    @Param({"ipv4", "ipv6"})
+    private String ip;
+
+    private List<HitEndpointDto> dtos;
+    private List<Stats> hits;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        dtos = new ArrayList<>(HITS);
+        for (int i = 0; i < HITS; i++) {
+            String address = ip.equals("ipv4")
+                    ? "192.168." + random.nextInt(256) + "." + random.nextInt(256)
+                    : "2001:db8::" + Integer.toHexString(random.nextInt(0x10000));
+            dtos.add(new HitEndpointDto("ewm-main-service", "/events/" + random.nextInt(10_000), address,
+                    now.minusSeconds(random.nextInt(86_400))));
+        }
+        hits = fromDto();
+    }
+
+    @Benchmark
+    public List<Stats> fromDto() {
+        List<Stats> mapped = new ArrayList<>(dtos.size());
+        for (HitEndpointDto dto : dtos) {
+            mapped.add(StatsMapper.fromDto(dto));
+        }
+        return mapped;
+    }
+
+    @Benchmark
+    public List<HitEndpointDto> toDto() {
+        List<HitEndpointDto> mapped = new ArrayList<>(hits.size());
+        for (Stats hit : hits) {
+            mapped.add(StatsMapper.toDto(hit));
+        }
+        return mapped;
+    }
+}
@@ -0,0 +1,158 @@
+package ru.practicum.benchmark;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.server.StatsServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of stats-server over HTTP with platform and with virtual request threads.
+ * Each mode starts the server in-process on its own H2 database and runs a closed loop of concurrent clients
+ * that post hits and read stats, then throughput, p50 and p99 are printed side by side.
+ * Options are system properties: {@code -Dclients=400 -Dseconds=20 -Dwarmup=5 -Dstats-share=0.1 -Dpool=10}.
+ */
+public class ThreadModeLoadTest {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int URIS = 1000;
+
+    private final int clients = Integer.getInteger("clients", 400);
+    private final int seconds = Integer.getInteger("seconds", 20);
+    private final int warmup = Integer.getInteger("warmup", 5);
+    private final double statsShare = Double.parseDouble(System.getProperty("stats-share", "0.1"));
+    private final int pool = Integer.getInteger("pool", 10);
+
+    public static void main(String[] args) throws Exception {
+        ThreadModeLoadTest test = new ThreadModeLoadTest();
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-9s %10s %10s %10s %8s", "threads", "req/s", "p50 ms", "p99 ms", "errors"));
+        for (boolean virtual : new boolean[]{false, true}) {
+            report.add(test.run(virtual));
+        }
+        System.out.printf("%n%d clients, %d s, %.0f%% stats reads, pool of %d connections%n",
+                test.clients, test.seconds, test.statsShare * 100, test.pool);
+        report.forEach(System.out::println);
+    }
+
+    private String run(boolean virtual) throws Exception {
+        String mode = virtual ? "virtual" : "platform";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(StatsServer.class)
+                .bannerMode(Banner.Mode.OFF)
+                .run(
+                        "--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtual,
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + mode
+                                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=" + pool,
+                        "--spring.sql.init.platform=h2",
+                        "--stats.ingest.shed.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.transaction.interceptor=WARN")) {
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient client = HttpClient.newBuilder()
+                        .executor(executor)
+                        .connectTimeout(Duration.ofSeconds(10))
+                        .build();
+                load(client, executor, base, warmup);
+                Result result = load(client, executor, base, seconds);
+                return String.format("%-9s %10.0f %10.1f %10.1f %8d", mode, (double) result.latencies.length / seconds,
+                        result.percentile(0.5), result.percentile(0.99), result.errors);
+            }
+        }
+    }
+
+    private Result load(HttpClient client, ExecutorService executor, String base, int duration) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+        List<Future<Result>> workers = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            workers.add(executor.submit(() -> work(client, base, deadline)));
+        }
+        Result total = new Result(new long[0], 0);
+        for (Future<Result> worker : workers) {
+            total = total.merge(worker.get());
+        }
+        return total;
+    }
+
+    private Result work(HttpClient client, String base, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[1024];
+        int count = 0;
+        long errors = 0;
+        while (System.nanoTime() < deadline) {
+            HttpRequest request = random.nextDouble() < statsShare
+                    ? statsRequest(base, random)
+                    : hitRequest(base, random);
+            long started = System.nanoTime();
+            try {
+                int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status >= 400) {
+                    errors++;
+                }
+            } catch (Exception e) {
+                errors++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - started;
+        }
+        return new Result(Arrays.copyOf(latencies, count), errors);
+    }
+
+    private static HttpRequest hitRequest(String base, ThreadLocalRandom random) {
+        String body = String.format("{\"app\":\"ewm-main-service\",\"uri\":\"/events/%d\",\"ip\":\"10.0.%d.%d\","
+                        + "\"timestamp\":\"%s\"}", random.nextInt(URIS), random.nextInt(256), random.nextInt(256),
+                LocalDateTime.now().format(FORMATTER));
+        return HttpRequest.newBuilder(URI.create(base + "/hit"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static HttpRequest statsRequest(String base, ThreadLocalRandom random) {
+        String start = LocalDateTime.now().minusDays(1).format(FORMATTER).replace(' ', '+');
+        String end = LocalDateTime.now().plusDays(1).format(FORMATTER).replace(' ', '+');
+        return HttpRequest.newBuilder(URI.create(base + "/stats?start=" + start + "&end=" + end
+                        + "&uris=/events/" + random.nextInt(URIS) + "&unique=" + random.nextBoolean()))
+                .GET()
+                .build();
+    }
+
+    private record Result(long[] latencies, long errors) {
+
+        private Result merge(Result other) {
+            long[] merged = Arrays.copyOf(latencies, latencies.length + other.latencies.length);
+            System.arraycopy(other.latencies, 0, merged, latencies.length, other.latencies.length);
+            return new Result(merged, errors + other.errors);
+        }
+
+        private double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ru.practicum.client;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+class GzipRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        if (body.length == 0) {
+            return execution.execute(request, body);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        byte[] gzipped = compressed.toByteArray();
+        request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        // the length of the uncompressed body is already set and would make the server wait for bytes never sent
+        request.getHeaders().setContentLength(gzipped.length);
+        return execution.execute(request, gzipped);
+    }
+}
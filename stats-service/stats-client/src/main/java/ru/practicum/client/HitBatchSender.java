@@ -0,0 +1,95 @@
+package ru.practicum.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import ru.practicum.dto.HitEndpointDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+@Slf4j
+class HitBatchSender {
+    private final Predicate<List<HitEndpointDto>> sender;
+    private final BlockingQueue<HitEndpointDto> buffer;
+    private final int batchSize;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    HitBatchSender(Predicate<List<HitEndpointDto>> sender, int capacity, int batchSize, long flushIntervalMs) {
+        this.sender = sender;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-client-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void add(HitEndpointDto hit) {
+        if (!buffer.offer(hit)) {
+            log.warn("Stats client buffer is full, hit {} dropped", hit.getUri());
+            return;
+        }
+        if (buffer.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        List<HitEndpointDto> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            if (!send(batch)) {
+                requeue(batch);
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    // false means the server asked to retry later or couldn't be reached, so the batch is kept for the next flush;
+    // a batch the server rejected is dropped, sending it again would fail the same way
+    private boolean send(List<HitEndpointDto> batch) {
+        try {
+            return sender.test(batch);
+        } catch (ResourceAccessException e) {
+            log.warn("Stats server unreachable, {} hits kept for the next flush: {}", batch.size(), e.getMessage());
+            return false;
+        } catch (RestClientException e) {
+            log.warn("Failed to send {} hits to stats server: {}", batch.size(), e.getMessage());
+            return true;
+        }
+    }
+
+    private void requeue(List<HitEndpointDto> batch) {
+        int dropped = 0;
+        for (HitEndpointDto hit : batch) {
+            if (!buffer.offer(hit)) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            log.warn("Stats client buffer is full, {} hits dropped", dropped);
+        }
+    }
+}
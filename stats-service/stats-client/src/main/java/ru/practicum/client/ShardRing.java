@@ -0,0 +1,33 @@
+package ru.practicum.client;
+
+import ru.practicum.dto.HyperLogLog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring of stats servers. Every server is placed on the ring at several points,
+ * so adding or removing one server moves only about 1/n of the uris and spreads them over the others.
+ */
+class ShardRing<N> {
+    private final NavigableMap<Long, N> points = new TreeMap<>();
+
+    ShardRing(Map<String, N> nodes, int pointsPerNode) {
+        for (Map.Entry<String, N> node : nodes.entrySet()) {
+            for (int i = 0; i < pointsPerNode; i++) {
+                points.put(hash(node.getKey() + '#' + i), node.getValue());
+            }
+        }
+    }
+
+    N owner(String key) {
+        Map.Entry<Long, N> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    private static long hash(String value) {
+        return HyperLogLog.hash(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
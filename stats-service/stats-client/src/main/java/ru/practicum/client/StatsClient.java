@@ -1,32 +1,69 @@
 package ru.practicum.client;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.DefaultUriBuilderFactory;
 import ru.practicum.dto.HitEndpointDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.dto.ViewVisitorsDto;
+import ru.practicum.dto.VisitorBitmap;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+/**
+ * Client of one stats server or of several servers sharded by uri.
+ * With a comma separated {@code stats-server.url} every hit goes to the owner of its uri on a consistent hash ring,
+ * and stats are read from the owners of the requested uris only.
+ * After servers are added or removed, {@code stats-server.previous-url} keeps the old list: reads then also ask
+ * the previous owner of each uri and merge, until the hits written before the change are no longer needed.
+ */
+@Slf4j
 @Service
-public class StatsClient {
-    protected final RestTemplate rest;
+public class StatsClient implements DisposableBean {
+    private static final String WILDCARD = "*";
+
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final Map<String, StatsNode> nodes = new LinkedHashMap<>();
+    private final ShardRing<StatsNode> ring;
+    private final ShardRing<StatsNode> previousRing;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
 
-    public StatsClient(@Value("${stats-server.url}") String serverUrl, RestTemplateBuilder builder) {
-        this.rest = builder
-                .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
-                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory())
-                .build();
+    public StatsClient(@Value("${stats-server.url}") String serverUrls,
+                       @Value("${stats-server.previous-url:}") String previousUrls,
+                       @Value("${stats-server.ring-points:128}") int ringPoints,
+                       @Value("${stats-server.batch.enabled:false}") boolean batchEnabled,
+                       @Value("${stats-server.batch.size:200}") int batchSize,
+                       @Value("${stats-server.batch.flush-interval-ms:1000}") long flushIntervalMs,
+                       @Value("${stats-server.batch.capacity:10000}") int batchCapacity,
+                       @Value("${stats-server.binary.enabled:true}") boolean binaryEnabled,
+                       @Value("${stats-server.connect-timeout-ms:1000}") long connectTimeoutMs,
+                       @Value("${stats-server.read-timeout-ms:5000}") long readTimeoutMs,
+                       @Value("${stats-server.max-connections:50}") int maxConnections,
+                       RestTemplateBuilder builder) {
+        Function<String, StatsNode> node = url -> nodes.computeIfAbsent(url, u -> new StatsNode(u, builder,
+                connectTimeoutMs, readTimeoutMs, maxConnections, binaryEnabled,
+                batchEnabled, batchSize, flushIntervalMs, batchCapacity));
+        this.ring = ring(serverUrls, node, ringPoints);
+        this.previousRing = previousUrls.isBlank() ? null : ring(previousUrls, node, ringPoints);
+        if (nodes.size() > 1) {
+            log.info("Stats servers {}, previous {}", serverUrls, previousUrls.isBlank() ? "none" : previousUrls);
+        }
     }
 
     public void postHit(String app, String uri, String ip, LocalDateTime timestamp) {
@@ -37,18 +74,137 @@ public class StatsClient {
                 .timestamp(timestamp)
                 .build();
 
-        rest.postForEntity("/hit", new HttpEntity<>(hit), Void.class);
+        ring.owner(uri).postHit(hit);
+    }
+
+    public void postHits(List<HitEndpointDto> hits) {
+        Map<StatsNode, List<HitEndpointDto>> byNode = new LinkedHashMap<>();
+        for (HitEndpointDto hit : hits) {
+            byNode.computeIfAbsent(ring.owner(hit.getUri()), n -> new ArrayList<>()).add(hit);
+        }
+        byNode.forEach(StatsNode::postHits);
     }
 
     public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        Map<String, Object> parameters = Map.of(
-                "start", start.format(formatter),
-                "end", end.format(formatter),
-                "uris", uris,
-                "unique", unique);
-
-        return rest.exchange("/stats?start={start}&end={end}&uris={uris}&unique={unique}", HttpMethod.GET,
-                null, new ParameterizedTypeReference<List<ViewStatsDto>>() {
-                }, parameters).getBody();
+        String from = start.format(formatter);
+        String to = end.format(formatter);
+        Map<StatsNode, List<String>> targets = targets(uris);
+        if (targets.size() == 1) {
+            Map.Entry<StatsNode, List<String>> target = targets.entrySet().iterator().next();
+            return target.getKey().getStats(from, to, target.getValue(), unique);
+        }
+        return merge(fanOut(targets, (node, nodeUris) -> node.getStats(from, to, nodeUris, unique)),
+                from, to, Boolean.TRUE.equals(unique));
+    }
+
+    @Override
+    public void destroy() {
+        nodes.values().forEach(StatsNode::close);
+        executor.shutdown();
+    }
+
+    private static ShardRing<StatsNode> ring(String urls, Function<String, StatsNode> node, int ringPoints) {
+        Map<String, StatsNode> ringNodes = new LinkedHashMap<>();
+        Arrays.stream(urls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .forEach(url -> ringNodes.put(url, node.apply(url)));
+        if (ringNodes.isEmpty()) {
+            throw new IllegalArgumentException("No stats server url in '" + urls + "'");
+        }
+        return new ShardRing<>(ringNodes, ringPoints);
+    }
+
+    // patterns and "all uris" can match uris of any server
+    private Map<StatsNode, List<String>> targets(List<String> uris) {
+        Map<StatsNode, List<String>> targets = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty() || uris.stream().anyMatch(uri -> uri.endsWith(WILDCARD))) {
+            nodes.values().forEach(node -> targets.put(node, uris));
+            return targets;
+        }
+        for (String uri : uris) {
+            targets.computeIfAbsent(ring.owner(uri), n -> new ArrayList<>()).add(uri);
+            if (previousRing != null) {
+                List<String> previous = targets.computeIfAbsent(previousRing.owner(uri), n -> new ArrayList<>());
+                if (!previous.contains(uri)) {
+                    previous.add(uri);
+                }
+            }
+        }
+        return targets;
+    }
+
+    private <T> Map<StatsNode, List<T>> fanOut(Map<StatsNode, List<String>> targets,
+                                               BiFunction<StatsNode, List<String>, List<T>> call) {
+        Map<StatsNode, Future<List<T>>> futures = new LinkedHashMap<>();
+        targets.forEach((node, nodeUris) -> futures.put(node, executor.submit(() -> call.apply(node, nodeUris))));
+        Map<StatsNode, List<T>> results = new LinkedHashMap<>();
+        for (Map.Entry<StatsNode, Future<List<T>>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException("Stats request to " + future.getKey().getUrl() + " failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + future.getKey().getUrl(), e);
+            }
+        }
+        return results;
+    }
+
+    // A uri is only found on two servers while hits from before a cluster change remain. Hits of such a uri add up,
+    // but its visitors may have been counted by both servers, so their exact visitor sets are united and counted.
+    private List<ViewStatsDto> merge(Map<StatsNode, List<ViewStatsDto>> results, String from, String to,
+                                     boolean unique) {
+        Map<AppUri, Long> hits = new HashMap<>();
+        Map<AppUri, List<StatsNode>> sources = new HashMap<>();
+        results.forEach((node, stats) -> stats.forEach(view -> {
+            AppUri key = new AppUri(view.getApp(), view.getUri());
+            hits.merge(key, view.getHits(), Long::sum);
+            sources.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+        }));
+
+        Map<StatsNode, List<String>> split = new LinkedHashMap<>();
+        if (unique) {
+            sources.forEach((key, keyNodes) -> {
+                if (keyNodes.size() > 1) {
+                    keyNodes.forEach(node -> {
+                        List<String> nodeUris = split.computeIfAbsent(node, n -> new ArrayList<>());
+                        if (!nodeUris.contains(key.uri())) {
+                            nodeUris.add(key.uri());
+                        }
+                    });
+                }
+            });
+        }
+        if (!split.isEmpty()) {
+            Map<AppUri, VisitorBitmap> visitors = new HashMap<>();
+            for (List<ViewVisitorsDto> nodeVisitors : fanOut(split, (node, nodeUris) ->
+                    node.getVisitors(from, to, nodeUris)).values()) {
+                for (ViewVisitorsDto view : nodeVisitors) {
+                    visitors.merge(new AppUri(view.getApp(), view.getUri()), VisitorBitmap.fromBytes(view.getVisitors()),
+                            (existing, added) -> {
+                                existing.merge(added);
+                                return existing;
+                            });
+                }
+            }
+            visitors.forEach((key, bitmap) -> {
+                if (sources.getOrDefault(key, List.of()).size() > 1) {
+                    hits.put(key, bitmap.cardinality());
+                }
+            });
+        }
+
+        return hits.entrySet().stream()
+                .map(e -> new ViewStatsDto(e.getKey().app(), e.getKey().uri(), e.getValue()))
+                .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                .toList();
+    }
+
+    private record AppUri(String app, String uri) {
     }
 }
@@ -0,0 +1,170 @@
+package ru.practicum.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+import ru.practicum.dto.HitBinaryMessageConverter;
+import ru.practicum.dto.HitEndpointDto;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.dto.ViewVisitorsDto;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One stats server: its REST templates, optional hit batching and back-off while the server is overloaded.
+ */
+@Slf4j
+class StatsNode {
+    private final String url;
+    private final RestTemplate rest;
+    private final HitBatchSender batchSender;
+    private volatile boolean binary;
+    private volatile long pausedUntil;
+
+    StatsNode(String url, RestTemplateBuilder builder, long connectTimeoutMs, long readTimeoutMs, int maxConnections,
+              boolean binary, boolean batchEnabled, int batchSize, long flushIntervalMs, int batchCapacity) {
+        this.url = url;
+        this.rest = builder
+                .uriTemplateHandler(new DefaultUriBuilderFactory(url))
+                .requestFactory(() -> requestFactory(connectTimeoutMs, readTimeoutMs, maxConnections))
+                .build();
+        this.rest.getMessageConverters().add(new HitBinaryMessageConverter());
+        this.binary = binary;
+        if (batchEnabled) {
+            RestTemplate batchRest = builder
+                    .uriTemplateHandler(new DefaultUriBuilderFactory(url))
+                    .requestFactory(() -> requestFactory(connectTimeoutMs, readTimeoutMs, maxConnections))
+                    .additionalInterceptors(new GzipRequestInterceptor())
+                    .build();
+            batchRest.getMessageConverters().add(new HitBinaryMessageConverter());
+            this.batchSender = new HitBatchSender(hits -> post(batchRest, "/hits", hits, hits),
+                    batchCapacity, batchSize, flushIntervalMs);
+        } else {
+            this.batchSender = null;
+        }
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    void postHit(HitEndpointDto hit) {
+        if (batchSender != null) {
+            batchSender.add(hit);
+        } else {
+            post(rest, "/hit", List.of(hit), hit);
+        }
+    }
+
+    void postHits(List<HitEndpointDto> hits) {
+        post(rest, "/hits", hits, hits);
+    }
+
+    List<ViewStatsDto> getStats(String start, String end, List<String> uris, Boolean unique) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("unique", unique);
+        return rest.exchange(query("/stats", start, end, uris, parameters) + "&unique={unique}", HttpMethod.GET,
+                null, new ParameterizedTypeReference<List<ViewStatsDto>>() {
+                }, parameters).getBody();
+    }
+
+    List<ViewVisitorsDto> getVisitors(String start, String end, List<String> uris) {
+        Map<String, Object> parameters = new HashMap<>();
+        return rest.exchange(query("/stats/visitors", start, end, uris, parameters), HttpMethod.GET,
+                null, new ParameterizedTypeReference<List<ViewVisitorsDto>>() {
+                }, parameters).getBody();
+    }
+
+    void close() {
+        if (batchSender != null) {
+            batchSender.close();
+        }
+    }
+
+    // every uri is its own template variable, so uris containing commas survive as one value
+    private static String query(String path, String start, String end, List<String> uris,
+                                Map<String, Object> parameters) {
+        StringBuilder query = new StringBuilder(path).append("?start={start}&end={end}");
+        parameters.put("start", start);
+        parameters.put("end", end);
+        if (uris != null) {
+            for (int i = 0; i < uris.size(); i++) {
+                query.append("&uris={uri").append(i).append('}');
+                parameters.put("uri" + i, uris.get(i));
+            }
+        }
+        return query.toString();
+    }
+
+    // the default pool allows 5 connections to one server, too few once request threads are virtual.
+    // HttpClient 5 takes the read timeout from the connection config, the request factory has no setter for it
+    private static HttpComponentsClientHttpRequestFactory requestFactory(long connectTimeoutMs, long readTimeoutMs,
+                                                                         int maxConnections) {
+        return new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnPerRoute(maxConnections)
+                        .setMaxConnTotal(maxConnections)
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                                .build())
+                        .build())
+                .build());
+    }
+
+    // binary hits are sent until the server answers 415, then JSON is used from then on.
+    // While an overloaded server asks to retry later hits aren't sent at all, and false is returned
+    private boolean post(RestTemplate rest, String path, List<HitEndpointDto> hits, Object json) {
+        if (System.currentTimeMillis() < pausedUntil) {
+            return false;
+        }
+        try {
+            if (binary) {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(HitBinaryMessageConverter.MEDIA_TYPE);
+                try {
+                    rest.postForEntity(path, new HttpEntity<>(hits, headers), Void.class);
+                    return true;
+                } catch (HttpClientErrorException.UnsupportedMediaType e) {
+                    log.info("Stats server {} doesn't accept binary hits, falling back to JSON", url);
+                    binary = false;
+                }
+            }
+            rest.postForEntity(path, new HttpEntity<>(json), Void.class);
+            return true;
+        } catch (HttpServerErrorException.ServiceUnavailable | HttpClientErrorException.TooManyRequests e) {
+            pause(e);
+            return false;
+        }
+    }
+
+    private void pause(HttpStatusCodeException e) {
+        long seconds = 1;
+        String retryAfter = e.getResponseHeaders() == null ? null
+                : e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                seconds = Long.parseLong(retryAfter.trim());
+            } catch (NumberFormatException ignored) {
+                // an HTTP date is treated as the default delay
+            }
+        }
+        pausedUntil = System.currentTimeMillis() + seconds * 1000;
+        log.warn("Stats server {} is overloaded, not sending hits for {} s: {}", url, seconds, e.getStatusText());
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.dto;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Reads and writes a hit or a list of hits in the {@link HitCodec} encoding.
+ * A single hit is sent as a list of one.
+ * A list is written only when its element type is known to be hits or the binary media type was asked for,
+ * so other lists are never written in binary form.
+ */
+public class HitBinaryMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(HitCodec.MEDIA_TYPE);
+
+    public HitBinaryMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(@NonNull Class<?> clazz) {
+        return HitEndpointDto.class == clazz || List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(@NonNull Type type, Class<?> contextClass, MediaType mediaType) {
+        return (HitEndpointDto.class == type || isHitList(type)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, @NonNull Class<?> clazz, MediaType mediaType) {
+        if (HitEndpointDto.class == clazz || isHitList(type)) {
+            return canWrite(mediaType);
+        }
+        // a list without its element type, as RestTemplate sees a request body
+        return !(type instanceof ParameterizedType) && List.class.isAssignableFrom(clazz)
+                && mediaType != null && MEDIA_TYPE.isCompatibleWith(mediaType) && !mediaType.isWildcardType();
+    }
+
+    @Override
+    @NonNull
+    public Object read(@NonNull Type type, Class<?> contextClass, @NonNull HttpInputMessage inputMessage)
+            throws IOException {
+        List<HitEndpointDto> hits = HitCodec.read(inputMessage.getBody());
+        if (HitEndpointDto.class != type) {
+            return hits;
+        }
+        if (hits.size() != 1) {
+            throw new HttpMessageNotReadableException("Expected one hit, got " + hits.size(), inputMessage);
+        }
+        return hits.getFirst();
+    }
+
+    @Override
+    @NonNull
+    protected Object readInternal(@NonNull Class<?> clazz, @NonNull HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(@NonNull Object body, Type type, @NonNull HttpOutputMessage outputMessage)
+            throws IOException {
+        List<HitEndpointDto> hits = body instanceof HitEndpointDto hit ? List.of(hit) : (List<HitEndpointDto>) body;
+        HitCodec.write(hits, outputMessage.getBody());
+    }
+
+    private static boolean isHitList(Type type) {
+        return type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() == List.class
+                && parameterized.getActualTypeArguments()[0] == HitEndpointDto.class;
+    }
+}
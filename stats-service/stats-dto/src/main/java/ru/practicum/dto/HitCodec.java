@@ -0,0 +1,99 @@
+package ru.practicum.dto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Length-prefixed binary encoding of hits: a version byte and a hit count, then for every hit
+ * app, uri and ip as UTF-8 strings with an unsigned short length prefix and the timestamp as UTC epoch millis.
+ */
+public final class HitCodec {
+    public static final String MEDIA_TYPE = "application/x-ewm-hits";
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 1 + Integer.BYTES;
+    private static final int FIXED_HIT_BYTES = 3 * Short.BYTES + Long.BYTES;
+
+    private HitCodec() {
+    }
+
+    public static void write(List<HitEndpointDto> hits, OutputStream out) throws IOException {
+        out.write(encode(hits));
+    }
+
+    public static byte[] encode(List<HitEndpointDto> hits) throws IOException {
+        byte[][] strings = new byte[hits.size() * 3][];
+        int size = HEADER_BYTES + hits.size() * FIXED_HIT_BYTES;
+        int i = 0;
+        for (HitEndpointDto hit : hits) {
+            for (String value : new String[]{hit.getApp(), hit.getUri(), hit.getIp()}) {
+                byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 0xFFFF) {
+                    throw new IOException("Value too long: " + bytes.length + " bytes");
+                }
+                strings[i++] = bytes;
+                size += bytes.length;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .put(VERSION)
+                .putInt(hits.size());
+        i = 0;
+        for (HitEndpointDto hit : hits) {
+            for (int field = 0; field < 3; field++) {
+                byte[] bytes = strings[i++];
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            buffer.putLong(hit.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+        return buffer.array();
+    }
+
+    public static List<HitEndpointDto> read(InputStream in) throws IOException {
+        return decode(in.readAllBytes());
+    }
+
+    public static List<HitEndpointDto> decode(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported hit encoding version " + version);
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / FIXED_HIT_BYTES) {
+                throw new IOException("Invalid hit count " + count);
+            }
+            List<HitEndpointDto> hits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                hits.add(new HitEndpointDto(readString(buffer), readString(buffer), readString(buffer),
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong()), ZoneOffset.UTC)));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected data after " + count + " hits");
+            }
+            return hits;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated hit data");
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -2,6 +2,8 @@ package ru.practicum.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PastOrPresent;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -16,12 +18,15 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 public class HitEndpointDto {
     @NotBlank
+    @Size(max = 64)
     private String app;
     @NotBlank
+    @Size(max = 256)
     private String uri;
     @NotBlank
     private String ip;
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
     @NotNull
+    @PastOrPresent
     private LocalDateTime timestamp;
 }
@@ -0,0 +1,19 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Serialized {@link HyperLogLog} of the visitors of one uri, so unique counts from several servers can be merged.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ViewSketchDto {
+    private String app;
+    private String uri;
+    private byte[] sketch;
+}
@@ -0,0 +1,20 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Serialized {@link VisitorBitmap} of the visitors of one uri, so exact unique counts from several servers
+ * can be united.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ViewVisitorsDto {
+    private String app;
+    private String uri;
+    private byte[] visitors;
+}
@@ -0,0 +1,268 @@
+package ru.practicum.dto;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exact set of visitor addresses. IPv4 addresses are kept as 32-bit ints in a compressed bitmap:
+ * one container per high 16 bits, a sorted array of the low 16 bits while it holds at most 4096 of them
+ * and a 2^16 bit bitmap above that, so a container never takes more than 8 KB.
+ * Other addresses, IPv6 in practice, go to a plain set.
+ */
+public class VisitorBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = (1 << Character.SIZE) / Long.SIZE;
+    private static final byte VERSION = 1;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+    private final Set<ByteBuffer> others = new HashSet<>();
+
+    public void offer(byte[] ip) {
+        if (ip.length == Integer.BYTES) {
+            add(ByteBuffer.wrap(ip).getInt());
+        } else {
+            others.add(ByteBuffer.wrap(ip.clone()));
+        }
+    }
+
+    public void add(int ipv4) {
+        container((char) (ipv4 >>> Character.SIZE)).add((char) ipv4);
+    }
+
+    public void merge(VisitorBitmap other) {
+        for (int i = 0; i < other.size; i++) {
+            int index = Arrays.binarySearch(keys, 0, size, other.keys[i]);
+            if (index >= 0) {
+                containers[index].or(other.containers[i]);
+            } else {
+                insert(-index - 1, other.keys[i], other.containers[i].copy());
+            }
+        }
+        others.addAll(other.others);
+    }
+
+    public long cardinality() {
+        long cardinality = others.size();
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public byte[] toBytes() {
+        int length = 1 + Integer.BYTES + Integer.BYTES;
+        for (int i = 0; i < size; i++) {
+            length += 2 * Character.BYTES + containers[i].byteSize();
+        }
+        List<ByteBuffer> sorted = new ArrayList<>(others);
+        sorted.sort(null);
+        for (ByteBuffer ip : sorted) {
+            length += 1 + ip.remaining();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length).put(VERSION).putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putChar(keys[i]);
+            containers[i].write(buffer);
+        }
+        buffer.putInt(sorted.size());
+        for (ByteBuffer ip : sorted) {
+            buffer.put((byte) ip.remaining()).put(ip.duplicate());
+        }
+        return buffer.array();
+    }
+
+    public static VisitorBitmap fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.get() != VERSION) {
+            throw new IllegalArgumentException("Unknown visitor bitmap version " + bytes[0]);
+        }
+        VisitorBitmap bitmap = new VisitorBitmap();
+        int count = buffer.getInt();
+        bitmap.keys = new char[count];
+        bitmap.containers = new Container[count];
+        for (int i = 0; i < count; i++) {
+            bitmap.keys[i] = buffer.getChar();
+            bitmap.containers[i] = Container.read(buffer);
+        }
+        bitmap.size = count;
+        int others = buffer.getInt();
+        for (int i = 0; i < others; i++) {
+            byte[] ip = new byte[buffer.get()];
+            buffer.get(ip);
+            bitmap.others.add(ByteBuffer.wrap(ip));
+        }
+        return bitmap;
+    }
+
+    private Container container(char key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return containers[index];
+        }
+        Container container = new Container();
+        insert(-index - 1, key, container);
+        return container;
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    // low 16 bits of the addresses sharing one high half, in an array or in a bitmap
+    private static final class Container {
+        private char[] values = new char[4];
+        private long[] bits;
+        private int cardinality;
+
+        void add(char value) {
+            if (bits != null) {
+                long word = bits[value >>> 6];
+                long updated = word | (1L << value);
+                if (updated != word) {
+                    bits[value >>> 6] = updated;
+                    cardinality++;
+                }
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                add(value);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+        }
+
+        void or(Container other) {
+            if (bits == null && other.bits == null) {
+                orArrays(other);
+                return;
+            }
+            if (bits == null) {
+                toBitmap();
+            }
+            if (other.bits != null) {
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    bits[i] |= other.bits[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; i++) {
+                    bits[other.values[i] >>> 6] |= 1L << other.values[i];
+                }
+            }
+            cardinality = 0;
+            for (long word : bits) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.values = values == null ? null : Arrays.copyOf(values, Math.max(cardinality, 1));
+            copy.bits = bits == null ? null : bits.clone();
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        int byteSize() {
+            return bits != null ? BITMAP_WORDS * Long.BYTES : cardinality * Character.BYTES;
+        }
+
+        // the cardinality tells the reader which form follows
+        void write(ByteBuffer buffer) {
+            buffer.putChar((char) (cardinality - 1));
+            if (bits != null) {
+                for (long word : bits) {
+                    buffer.putLong(word);
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    buffer.putChar(values[i]);
+                }
+            }
+        }
+
+        static Container read(ByteBuffer buffer) {
+            Container container = new Container();
+            container.cardinality = buffer.getChar() + 1;
+            if (container.cardinality > ARRAY_MAX) {
+                container.values = null;
+                container.bits = new long[BITMAP_WORDS];
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    container.bits[i] = buffer.getLong();
+                }
+            } else {
+                container.values = new char[container.cardinality];
+                for (int i = 0; i < container.cardinality; i++) {
+                    container.values[i] = buffer.getChar();
+                }
+            }
+            return container;
+        }
+
+        private void orArrays(Container other) {
+            char[] merged = new char[cardinality + other.cardinality];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < cardinality && j < other.cardinality) {
+                char a = values[i];
+                char b = other.values[j];
+                if (a <= b) {
+                    i++;
+                    if (a == b) {
+                        j++;
+                    }
+                    merged[n++] = a;
+                } else {
+                    j++;
+                    merged[n++] = b;
+                }
+            }
+            while (i < cardinality) {
+                merged[n++] = values[i++];
+            }
+            while (j < other.cardinality) {
+                merged[n++] = other.values[j++];
+            }
+            values = merged;
+            cardinality = n;
+            if (n > ARRAY_MAX) {
+                toBitmap();
+            }
+        }
+
+        private void toBitmap() {
+            bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+    }
+}
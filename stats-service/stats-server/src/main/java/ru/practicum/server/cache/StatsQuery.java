@@ -0,0 +1,41 @@
+package ru.practicum.server.cache;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cache key of a stats query over {@code [start, end)}. Uris are the requested patterns, sorted and distinct,
+ * null means all uris; a pattern ending in {@code *} matches every uri with that prefix, including uris first
+ * seen after the result was cached. The retention horizon is part of the key because exact unique counts turn
+ * into estimates behind it.
+ */
+public record StatsQuery(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                         boolean approximate, LocalDateTime horizon) {
+
+    private static final String WILDCARD = "*";
+
+    public static StatsQuery of(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                boolean approximate, LocalDateTime horizon) {
+        List<String> sorted = uris == null ? null : uris.stream().distinct().sorted().toList();
+        return new StatsQuery(start, end, sorted, unique, approximate, horizon);
+    }
+
+    public boolean matches(String uri, LocalDateTime timestamp) {
+        return !timestamp.isBefore(start) && timestamp.isBefore(end)
+                && (uris == null || matchesUri(uri));
+    }
+
+    private boolean matchesUri(String uri) {
+        if (Collections.binarySearch(uris, uri) >= 0) {
+            return true;
+        }
+        for (String pattern : uris) {
+            if (pattern.endsWith(WILDCARD)
+                    && uri.startsWith(pattern.substring(0, pattern.length() - WILDCARD.length()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,219 @@
+package ru.practicum.server.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.ingest.HitBatchListener;
+import ru.practicum.server.model.AppUri;
+import ru.practicum.server.model.Stats;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Results of stats queries over whole time buckets. Committed hits inside a cached range are added to
+ * cached hit counts; unique counts can't be patched that way, so their entries are dropped instead.
+ * A result loaded while a matching batch was being committed is not cached, since the batch may or may not
+ * be part of it.
+ */
+@Slf4j
+@Component
+public class StatsResultCache implements HitBatchListener {
+
+    private final boolean enabled;
+    private final long bucketSeconds;
+    private final int maxEntries;
+    private final LinkedHashMap<StatsQuery, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Loading> loading = new ArrayList<>();
+    private final Set<List<Stats>> committing = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter invalidationCounter;
+    private final Timer staleness;
+
+    public StatsResultCache(MeterRegistry meterRegistry,
+                            @Value("${stats.cache.enabled:true}") boolean enabled,
+                            @Value("${stats.cache.bucket-minutes:60}") int bucketMinutes,
+                            @Value("${stats.cache.max-entries:1000}") int maxEntries) {
+        this.enabled = enabled;
+        this.bucketSeconds = TimeUnit.MINUTES.toSeconds(bucketMinutes);
+        this.maxEntries = maxEntries;
+
+        Gauge.builder("stats.cache.entries", this, StatsResultCache::size)
+                .description("Cached stats results")
+                .register(meterRegistry);
+        Gauge.builder("stats.cache.hit.ratio", this, StatsResultCache::hitRatio)
+                .description("Share of cacheable stats queries answered from the cache")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("stats.cache.requests")
+                .tag("result", "hit")
+                .description("Cacheable stats queries answered from the cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("stats.cache.requests")
+                .tag("result", "miss")
+                .description("Cacheable stats queries passed to the database")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("stats.cache.evictions")
+                .description("Least recently used results evicted to stay under the entry cap")
+                .register(meterRegistry);
+        this.invalidationCounter = Counter.builder("stats.cache.invalidations")
+                .description("Unique count results dropped because new hits fell into their range")
+                .register(meterRegistry);
+        this.staleness = Timer.builder("stats.cache.staleness")
+                .description("Time since a served result was loaded from the database")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(seconds - Math.floorMod(seconds, bucketSeconds), 0, ZoneOffset.UTC);
+    }
+
+    public LocalDateTime bucketEnd(LocalDateTime time) {
+        return bucketStart(time).plusSeconds(bucketSeconds);
+    }
+
+    public LocalDateTime nextBucketStart(LocalDateTime time) {
+        LocalDateTime start = bucketStart(time);
+        return start.equals(time) ? start : start.plusSeconds(bucketSeconds);
+    }
+
+    public List<ViewStatsDto> get(StatsQuery query, Supplier<List<ViewStatsDto>> loader) {
+        Loading load;
+        synchronized (this) {
+            Entry entry = entries.get(query);
+            if (entry != null) {
+                hitCounter.increment();
+                staleness.record(System.nanoTime() - entry.loadedAt, TimeUnit.NANOSECONDS);
+                return entry.toList();
+            }
+            missCounter.increment();
+            load = new Loading(query);
+            load.dirty = committing.stream().anyMatch(hits -> matches(query, hits));
+            loading.add(load);
+        }
+        long loadedAt = System.nanoTime();
+        List<ViewStatsDto> stats;
+        try {
+            stats = loader.get();
+        } finally {
+            synchronized (this) {
+                loading.remove(load);
+            }
+        }
+        synchronized (this) {
+            if (!load.dirty) {
+                entries.put(query, new Entry(stats, loadedAt));
+                if (entries.size() > maxEntries) {
+                    Iterator<StatsQuery> eldest = entries.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    evictionCounter.increment();
+                }
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public synchronized void beforeCommit(List<Stats> hits) {
+        committing.add(hits);
+        for (Loading load : loading) {
+            if (!load.dirty && matches(load.query, hits)) {
+                load.dirty = true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onHits(List<Stats> hits) {
+        Iterator<Map.Entry<StatsQuery, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<StatsQuery, Entry> cached = it.next();
+            StatsQuery query = cached.getKey();
+            for (Stats hit : hits) {
+                if (!query.matches(hit.getUri(), hit.getTimestamp())) {
+                    continue;
+                }
+                if (query.unique()) {
+                    it.remove();
+                    invalidationCounter.increment();
+                    break;
+                }
+                cached.getValue().hits.merge(new AppUri(hit.getApp(), hit.getUri()), 1L, Long::sum);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void afterCompletion(List<Stats> hits) {
+        committing.remove(hits);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double requests = hitCounter.count() + missCounter.count();
+        return requests == 0 ? 0 : hitCounter.count() / requests;
+    }
+
+    private static boolean matches(StatsQuery query, List<Stats> hits) {
+        for (Stats hit : hits) {
+            if (query.matches(hit.getUri(), hit.getTimestamp())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Loading {
+        private final StatsQuery query;
+        private boolean dirty;
+
+        private Loading(StatsQuery query) {
+            this.query = query;
+        }
+    }
+
+    private static final class Entry {
+        private final Map<AppUri, Long> hits = new LinkedHashMap<>();
+        private final long loadedAt;
+
+        private Entry(List<ViewStatsDto> stats, long loadedAt) {
+            for (ViewStatsDto view : stats) {
+                hits.put(new AppUri(view.getApp(), view.getUri()), view.getHits());
+            }
+            this.loadedAt = loadedAt;
+        }
+
+        private List<ViewStatsDto> toList() {
+            return hits.entrySet().stream()
+                    .map(e -> new ViewStatsDto(e.getKey().app(), e.getKey().uri(), e.getValue()))
+                    .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                    .toList();
+        }
+    }
+}
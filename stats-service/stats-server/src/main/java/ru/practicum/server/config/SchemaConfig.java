@@ -0,0 +1,33 @@
+package ru.practicum.server.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.server.repository.LegacyHitRepository;
+import ru.practicum.server.repository.SqlDialect;
+
+import javax.sql.DataSource;
+
+@Slf4j
+@Configuration
+public class SchemaConfig {
+
+    // the schema scripts only create missing tables, so a hits table of the first version is moved aside first;
+    // LegacyHitMigrator copies its rows into the current one
+    @Bean
+    public SqlDataSourceScriptDatabaseInitializer dataSourceScriptDatabaseInitializer(DataSource dataSource,
+                                                                                     SqlDialect dialect,
+                                                                                     SqlInitializationProperties properties) {
+        return new SqlDataSourceScriptDatabaseInitializer(dataSource, properties) {
+            @Override
+            public boolean initializeDatabase() {
+                if (LegacyHitRepository.moveAside(dataSource, dialect.isPostgres())) {
+                    log.info("Hits table of the first version renamed to hits_legacy");
+                }
+                return super.initializeDatabase();
+            }
+        };
+    }
+}
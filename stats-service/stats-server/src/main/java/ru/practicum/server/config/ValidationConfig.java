@@ -0,0 +1,18 @@
+package ru.practicum.server.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.validation.ValidationConfigurationCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ValidationConfig {
+
+    // hits are stamped by the clock of the client, which may run slightly ahead of ours
+    @Bean
+    public ValidationConfigurationCustomizer clockSkewTolerance(
+            @Value("${stats.ingest.max-clock-skew-ms:60000}") long maxClockSkewMs) {
+        return configuration -> configuration.addProperty("hibernate.validator.temporal_validation_tolerance",
+                String.valueOf(maxClockSkewMs));
+    }
+}
@@ -0,0 +1,25 @@
+package ru.practicum.server.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.practicum.dto.HitBinaryMessageConverter;
+import ru.practicum.server.ingest.IngestLoadShedder;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+    private final IngestLoadShedder ingestLoadShedder;
+
+    @Bean
+    public HitBinaryMessageConverter hitBinaryMessageConverter() {
+        return new HitBinaryMessageConverter();
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(ingestLoadShedder).addPathPatterns("/hit", "/hits");
+    }
+}
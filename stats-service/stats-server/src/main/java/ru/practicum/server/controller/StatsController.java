@@ -1,22 +1,36 @@
 package ru.practicum.server.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.dto.HitEndpointDto;
+import ru.practicum.dto.ViewSeriesDto;
+import ru.practicum.dto.ViewSketchDto;
+import ru.practicum.dto.ViewVisitorsDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.counter.TopWindow;
+import ru.practicum.server.model.SeriesStep;
 import ru.practicum.server.service.StatsService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -27,21 +41,127 @@ import java.util.List;
 public class StatsController {
 
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
     private static final String FORMAT = "yyyy-MM-dd HH:mm:ss";
+    private static final String NDJSON = "application/x-ndjson";
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
     public void postHit(@Valid @RequestBody HitEndpointDto hit) {
-        log.info("Call postHit endpoint.");
+        log.debug("Call postHit endpoint.");
         statsService.postHit(hit);
     }
 
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void postHits(@RequestBody List<@Valid HitEndpointDto> hits) {
+        log.debug("Call postHits endpoint with {} hits.", hits.size());
+        statsService.postHits(hits);
+    }
+
     @GetMapping("/stats")
     public ResponseEntity<List<ViewStatsDto>> getStats(@RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime start,
                                                     @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime end,
                                                     @RequestParam(required = false) List<String> uris,
-                                                    @RequestParam(defaultValue = "false") Boolean unique) {
+                                                    @RequestParam(defaultValue = "false") Boolean unique,
+                                                    @RequestParam(defaultValue = "false") Boolean approximate,
+                                                    @RequestParam(required = false) @Positive Integer limit) {
         log.info("Call getStats endpoint.");
-        return new ResponseEntity<>(statsService.getStats(start, end, uris, unique), HttpStatus.OK);
+        return new ResponseEntity<>(statsService.getStats(start, end, uris, unique, approximate, limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/series")
+    public ResponseEntity<List<ViewSeriesDto>> getSeries(@RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime start,
+                                                         @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime end,
+                                                         @RequestParam(defaultValue = "HOUR") SeriesStep step,
+                                                         @RequestParam(required = false) List<String> uris,
+                                                         @RequestParam(defaultValue = "false") Boolean unique) {
+        log.info("Call getSeries endpoint.");
+        return new ResponseEntity<>(statsService.getSeries(start, end, step, uris, unique), HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/sketches")
+    public ResponseEntity<List<ViewSketchDto>> getSketches(@RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime start,
+                                                           @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime end,
+                                                           @RequestParam(required = false) List<String> uris) {
+        log.info("Call getSketches endpoint.");
+        return new ResponseEntity<>(statsService.getSketches(start, end, uris), HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/visitors")
+    public ResponseEntity<List<ViewVisitorsDto>> getVisitors(@RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime start,
+                                                             @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime end,
+                                                             @RequestParam(required = false) List<String> uris) {
+        log.info("Call getVisitors endpoint.");
+        return new ResponseEntity<>(statsService.getVisitors(start, end, uris), HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/top")
+    public ResponseEntity<List<ViewStatsDto>> getTopStats(@RequestParam(defaultValue = "DAY") TopWindow window,
+                                                          @RequestParam(defaultValue = "10") @Positive Integer k,
+                                                          @RequestParam(required = false) String app,
+                                                          @RequestParam(required = false) String prefix) {
+        log.info("Call getTopStats endpoint.");
+        return new ResponseEntity<>(statsService.getTopStats(window, k, app, prefix), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stats", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamStats(
+            @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean approximate,
+            @RequestParam(required = false) @Positive Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        log.info("Call streamStats endpoint.");
+        boolean ndjson = accept != null && accept.contains(NDJSON);
+        return stream(start, end, uris, unique, approximate, limit, ndjson);
+    }
+
+    @GetMapping(value = "/stats", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamStatsAsLines(
+            @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = FORMAT) LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean approximate,
+            @RequestParam(required = false) @Positive Integer limit) {
+        log.info("Call streamStats endpoint.");
+        return stream(start, end, uris, unique, approximate, limit, true);
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                         Boolean unique, Boolean approximate, Integer limit,
+                                                         boolean ndjson) {
+        // nothing is written before the first row, so validation errors still get a proper error response
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .setRootValueSeparator(null);
+            statsService.streamStats(start, end, uris, unique, approximate, limit, stats -> {
+                try {
+                    if (!ndjson && generator.getOutputContext().inRoot()) {
+                        generator.writeStartArray();
+                    }
+                    generator.writeObject(stats);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (!ndjson) {
+                if (generator.getOutputContext().inRoot()) {
+                    generator.writeStartArray();
+                }
+                generator.writeEndArray();
+            }
+            generator.close();
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.parseMediaType(NDJSON) : MediaType.APPLICATION_JSON)
+                .body(body);
     }
 }
@@ -0,0 +1,511 @@
+package ru.practicum.server.counter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.ingest.HitBatchListener;
+import ru.practicum.server.model.AppUri;
+import ru.practicum.server.model.Stats;
+import ru.practicum.server.model.TimeRange;
+import ru.practicum.server.model.TopStats;
+import ru.practicum.server.repository.StatsJdbcRepository;
+import ru.practicum.server.repository.StatsRollupRepository;
+import ru.practicum.dto.HyperLogLog;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exact hit counts per (app, uri) for the last window minutes in per-minute rings, with all earlier hits summed up.
+ * Keys are split over stripes by uri, each with its own lock, LRU order and filter of evicted uris, so ingest and
+ * queries on different uris don't wait for each other. Locks rather than monitors keep a virtual thread
+ * from pinning its carrier while it waits.
+ * Once a stripe has evicted too many uris for its filter to tell them apart, all stripes are rebuilt from the
+ * database with empty filters.
+ * Hits stamped later than now plus the allowed clock skew can't be placed in a ring; queries over their keys
+ * go to the database.
+ */
+@Slf4j
+@Component
+public class HitCounterEngine implements HitBatchListener, SmartInitializingSingleton {
+    private static final int KEY_OVERHEAD_BYTES = 256;
+    private static final int STRIPES = 16;
+    private static final int EVICTED_FILTER_BITS = (1 << 23) / STRIPES;
+    private static final int EVICTED_FILTER_HASHES = 3;
+    // with three hashes a filter holding one uri per 8 bits takes about 2.5% of the other uris for evicted ones
+    private static final int EVICTED_FILTER_BITS_PER_URI = 8;
+
+    private final StatsJdbcRepository statsJdbcRepository;
+    private final StatsRollupRepository statsRollupRepository;
+    private final boolean enabled;
+    private final int windowMinutes;
+    private final int maxKeysPerStripe;
+    private final Duration maxClockSkew;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong headMinute = new AtomicLong();
+    // batches between beforeCommit and afterCompletion; a rebuild waits until there are none,
+    // so the database holds exactly the batches already counted
+    private final Set<List<Stats>> committing = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Counter evictionCounter;
+    private final Counter rebuildCounter;
+    private final Counter coveredCounter;
+    private final Counter uncoveredCounter;
+    private volatile boolean ready;
+    private volatile boolean rebuildPending;
+    private volatile long hourlyUntil = Long.MIN_VALUE;
+
+    public HitCounterEngine(StatsJdbcRepository statsJdbcRepository,
+                            StatsRollupRepository statsRollupRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${stats.counter.enabled:true}") boolean enabled,
+                            @Value("${stats.counter.window-minutes:1440}") int windowMinutes,
+                            @Value("${stats.counter.max-memory-mb:64}") int maxMemoryMb,
+                            @Value("${stats.ingest.max-clock-skew-ms:60000}") long maxClockSkewMs) {
+        this.statsJdbcRepository = statsJdbcRepository;
+        this.statsRollupRepository = statsRollupRepository;
+        this.enabled = enabled;
+        this.windowMinutes = windowMinutes;
+        this.maxKeysPerStripe = (int) Math.max(1, (long) maxMemoryMb * 1024 * 1024
+                / ((long) windowMinutes * Integer.BYTES + KEY_OVERHEAD_BYTES) / STRIPES);
+        this.maxClockSkew = Duration.ofMillis(maxClockSkewMs);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        Gauge.builder("stats.counter.keys", this, HitCounterEngine::size)
+                .description("(app, uri) pairs tracked in memory")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("stats.counter.evictions")
+                .description("Cold (app, uri) pairs evicted to stay under the memory cap")
+                .register(meterRegistry);
+        this.rebuildCounter = Counter.builder("stats.counter.rebuilds")
+                .description("Rebuilds from the database to empty the filters of evicted uris")
+                .register(meterRegistry);
+        this.coveredCounter = Counter.builder("stats.counter.queries")
+                .tag("result", "covered")
+                .description("Stats queries answered from memory")
+                .register(meterRegistry);
+        this.uncoveredCounter = Counter.builder("stats.counter.queries")
+                .tag("result", "uncovered")
+                .description("Stats queries passed to the database")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        rebuild();
+    }
+
+    @Override
+    public void beforeCommit(List<Stats> hits) {
+        commitLock.lock();
+        try {
+            committing.add(hits);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    @Override
+    public void onHits(List<Stats> hits) {
+        if (!ready) {
+            return;
+        }
+        long latest = toMinute(LocalDateTime.now().plus(maxClockSkew));
+        for (Stats hit : hits) {
+            Stripe stripe = stripeFor(hit.getUri());
+            stripe.lock.lock();
+            try {
+                stripe.add(new AppUri(hit.getApp(), hit.getUri()), hit.getTimestamp(), latest);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void afterCompletion(List<Stats> hits) {
+        commitLock.lock();
+        try {
+            committing.remove(hits);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    // the limit most hit keys, most hits first, or empty if the counters don't cover the interval
+    public Optional<List<ViewStatsDto>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                 Integer limit) {
+        if (rebuildPending) {
+            rebuildIfIdle();
+        }
+        Optional<List<ViewStatsDto>> stats = ready ? count(start, end, uris, limit) : Optional.empty();
+        (stats.isPresent() ? coveredCounter : uncoveredCounter).increment();
+        return stats;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.counters.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    // runs on a query rather than in a batch's completion, where the batch's connection may still be bound;
+    // holding the commit lock keeps new batches from committing until the counters are loaded
+    private void rebuildIfIdle() {
+        if (!commitLock.tryLock()) {
+            return;
+        }
+        try {
+            if (rebuildPending && committing.isEmpty()) {
+                rebuild();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        ready = false;
+        rebuildPending = false;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                stripe.clear();
+            }
+            load();
+            ready = true;
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.lock.unlock();
+            }
+        }
+        log.info("Hit counters rebuilt in {} ms: {} keys, window {} minutes, cap {} keys",
+                System.currentTimeMillis() - started, size(), windowMinutes, maxKeysPerStripe * STRIPES);
+    }
+
+    private void load() {
+        Optional<TimeRange> range = statsJdbcRepository.getTimeRange();
+        Optional<LocalDateTime> firstHour = statsRollupRepository.getFirstHour();
+        LocalDateTime now = LocalDateTime.now();
+        long latest = toMinute(now.plus(maxClockSkew));
+        headMinute.set(toMinute(now));
+        if (range.isEmpty() && firstHour.isEmpty()) {
+            return;
+        }
+        LocalDateTime rawFrom = range.map(TimeRange::start).orElse(LocalDateTime.MAX);
+        LocalDateTime minTime = firstHour.filter(hour -> hour.isBefore(rawFrom)).orElse(rawFrom);
+        LocalDateTime maxTime = range.map(TimeRange::end)
+                .map(end -> toMinute(end) > latest ? fromMinute(latest) : end)
+                .orElse(minTime);
+        headMinute.accumulateAndGet(toMinute(maxTime), Math::max);
+        for (Stripe stripe : stripes) {
+            stripe.minTime = minTime;
+            stripe.maxTime = maxTime;
+        }
+
+        // hours dropped from raw storage by retention are only known from rollups
+        LocalDateTime ringStartHour = fromMinute(ringStart(headMinute.get())).truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime exactFrom = rawFrom.isAfter(ringStartHour)
+                ? rawFrom.truncatedTo(ChronoUnit.HOURS)
+                : ringStartHour;
+        LocalDateTime rolledUpFrom = minTime.truncatedTo(ChronoUnit.HOURS);
+        if (rolledUpFrom.isBefore(exactFrom)) {
+            statsRollupRepository.streamHours(rolledUpFrom, exactFrom, hits ->
+                    stripeFor(hits.uri()).load(new AppUri(hits.app(), hits.uri()), toMinute(hits.bucketStart()),
+                            hits.hits(), latest));
+        }
+        hourlyUntil = toMinute(exactFrom);
+        if (range.isPresent()) {
+            statsJdbcRepository.streamCountsSince(exactFrom, hits ->
+                    stripeFor(hits.uri()).load(new AppUri(hits.app(), hits.uri()), toMinute(hits.bucketStart()),
+                            hits.hits(), latest));
+        }
+    }
+
+    private Optional<List<ViewStatsDto>> count(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                               Integer limit) {
+        headMinute.accumulateAndGet(toMinute(LocalDateTime.now()), Math::max);
+        Map<Stripe, List<String>> selected = new LinkedHashMap<>();
+        if (uris == null) {
+            for (Stripe stripe : stripes) {
+                selected.put(stripe, null);
+            }
+        } else {
+            for (String uri : uris) {
+                selected.computeIfAbsent(stripeFor(uri), stripe -> new ArrayList<>()).add(uri);
+            }
+        }
+
+        TopStats result = new TopStats(limit);
+        for (Map.Entry<Stripe, List<String>> entry : selected.entrySet()) {
+            Stripe stripe = entry.getKey();
+            stripe.lock.lock();
+            try {
+                if (!stripe.count(start, end, entry.getValue(), result)) {
+                    return Optional.empty();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return Optional.of(result.toList());
+    }
+
+    private Stripe stripeFor(String uri) {
+        return stripes[Math.floorMod(uri.hashCode(), STRIPES)];
+    }
+
+    private long ringStart(long head) {
+        return head - windowMinutes + 1;
+    }
+
+    private static long toMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static LocalDateTime fromMinute(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    // guarded by its lock; counters are advanced only under it, so none is ahead of the head read under it
+    private final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<AppUri, MinuteCounter> counters = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<String, List<MinuteCounter>> countersByUri = new HashMap<>();
+        private final BitSet evictedUris = new BitSet(EVICTED_FILTER_BITS);
+        private long evictions;
+        private LocalDateTime minTime;
+        private LocalDateTime maxTime;
+
+        private void add(AppUri key, LocalDateTime timestamp, long latest) {
+            long minute = toMinute(timestamp);
+            if (minute > latest) {
+                counterFor(key, headMinute.get()).complete = false;
+                return;
+            }
+            long head = headMinute.accumulateAndGet(minute, Math::max);
+            if (minTime == null || timestamp.isBefore(minTime)) {
+                minTime = timestamp;
+            }
+            if (maxTime == null || timestamp.isAfter(maxTime)) {
+                maxTime = timestamp;
+            }
+            counterFor(key, head).add(minute, 1);
+        }
+
+        private void load(AppUri key, long minute, long count, long latest) {
+            MinuteCounter counter = counterFor(key, headMinute.get());
+            if (minute > latest) {
+                counter.complete = false;
+            } else {
+                counter.add(minute, count);
+            }
+        }
+
+        // adds the counts of the stripe's matching keys to result, or returns false if they aren't all known
+        private boolean count(LocalDateTime start, LocalDateTime end, List<String> uris, TopStats result) {
+            long head = headMinute.get();
+            if (minTime == null) {
+                return evictions == 0;
+            }
+
+            boolean fromBeginning = !start.isAfter(minTime);
+            long from = toMinute(start);
+            if (!fromBeginning && (start.getSecond() != 0 || start.getNano() != 0 || from < ringStart(head)
+                    || (from < hourlyUntil && start.getMinute() != 0))) {
+                return false;
+            }
+            long to = end.isBefore(maxTime) ? toMinute(end) : head;
+            if (end.isBefore(maxTime) && (end.getSecond() != 59 || to < ringStart(head)
+                    || (to < hourlyUntil && end.getMinute() != 59))) {
+                return false;
+            }
+
+            Collection<MinuteCounter> selected;
+            if (uris == null) {
+                if (evictions > 0) {
+                    return false;
+                }
+                selected = new ArrayList<>(counters.values());
+            } else {
+                selected = new LinkedHashSet<>();
+                for (String uri : uris) {
+                    List<MinuteCounter> byUri = countersByUri.get(uri);
+                    if (byUri == null && mayHaveBeenEvicted(uri)) {
+                        return false;
+                    }
+                    if (byUri != null) {
+                        selected.addAll(byUri);
+                    }
+                }
+            }
+
+            for (MinuteCounter counter : selected) {
+                if (!counter.complete) {
+                    return false;
+                }
+                touch(counter);
+                counter.advance(head);
+                long hits = counter.sum(fromBeginning, Math.max(from, ringStart(head)), to);
+                if (hits > 0) {
+                    result.offer(new ViewStatsDto(counter.key.app(), counter.key.uri(), hits));
+                }
+            }
+            return true;
+        }
+
+        private MinuteCounter counterFor(AppUri key, long head) {
+            MinuteCounter counter = counters.get(key);
+            if (counter == null) {
+                if (counters.size() >= maxKeysPerStripe) {
+                    evictEldest();
+                }
+                counter = new MinuteCounter(key, windowMinutes, head, !mayHaveBeenEvicted(key.uri()));
+                counters.put(key, counter);
+                countersByUri.computeIfAbsent(key.uri(), uri -> new ArrayList<>(1)).add(counter);
+            }
+            counter.advance(head);
+            return counter;
+        }
+
+        // a queried key moves to the most recently used end, so it is evicted last
+        private void touch(MinuteCounter counter) {
+            counters.get(counter.key);
+        }
+
+        private void evictEldest() {
+            Iterator<MinuteCounter> eldest = counters.values().iterator();
+            MinuteCounter evicted = eldest.next();
+            eldest.remove();
+            List<MinuteCounter> byUri = countersByUri.get(evicted.key.uri());
+            byUri.remove(evicted);
+            if (byUri.isEmpty()) {
+                countersByUri.remove(evicted.key.uri());
+            }
+            long hash = HyperLogLog.hash(evicted.key.uri().getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < EVICTED_FILTER_HASHES; i++) {
+                evictedUris.set(filterIndex(hash, i));
+            }
+            evictions++;
+            evictionCounter.increment();
+            if (evictions * EVICTED_FILTER_BITS_PER_URI > EVICTED_FILTER_BITS && !rebuildPending) {
+                rebuildPending = true;
+                rebuildCounter.increment();
+                log.info("Filter of evicted uris is full after {} evictions, hit counters will be rebuilt",
+                        evictions);
+            }
+        }
+
+        private boolean mayHaveBeenEvicted(String uri) {
+            if (evictions == 0) {
+                return false;
+            }
+            long hash = HyperLogLog.hash(uri.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < EVICTED_FILTER_HASHES; i++) {
+                if (!evictedUris.get(filterIndex(hash, i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int filterIndex(long hash, int i) {
+            return Math.floorMod((int) hash + i * (int) (hash >>> 32), EVICTED_FILTER_BITS);
+        }
+
+        private void clear() {
+            counters.clear();
+            countersByUri.clear();
+            evictedUris.clear();
+            evictions = 0;
+            minTime = null;
+            maxTime = null;
+        }
+    }
+
+    private static final class MinuteCounter {
+        private final AppUri key;
+        private final int[] ring;
+        private boolean complete;
+        private long before;
+        private long lastMinute;
+
+        private MinuteCounter(AppUri key, int windowMinutes, long headMinute, boolean complete) {
+            this.key = key;
+            this.ring = new int[windowMinutes];
+            this.lastMinute = headMinute;
+            this.complete = complete;
+        }
+
+        private void advance(long head) {
+            if (head <= lastMinute) {
+                return;
+            }
+            long steps = Math.min(head - lastMinute, ring.length);
+            for (long minute = head - steps + 1; minute <= head; minute++) {
+                int slot = slot(minute);
+                before += ring[slot];
+                ring[slot] = 0;
+            }
+            lastMinute = head;
+        }
+
+        private void add(long minute, long count) {
+            if (minute <= lastMinute - ring.length) {
+                before += count;
+            } else {
+                ring[slot(minute)] += (int) count;
+            }
+        }
+
+        private long sum(boolean withBefore, long from, long to) {
+            long sum = withBefore ? before : 0;
+            for (long minute = from; minute <= to; minute++) {
+                sum += ring[slot(minute)];
+            }
+            return sum;
+        }
+
+        private int slot(long minute) {
+            return (int) Math.floorMod(minute, ring.length);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ru.practicum.server.counter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.exception.ValidationException;
+import ru.practicum.server.ingest.HitBatchListener;
+import ru.practicum.server.model.AppUri;
+import ru.practicum.server.model.Stats;
+import ru.practicum.server.repository.StatsJdbcRepository;
+import ru.practicum.server.repository.StatsRollupRepository;
+import ru.practicum.server.sketch.SpaceSaving;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Most viewed (app, uri) pairs over sliding windows: Space-Saving summaries per minute for the last hour
+ * and per hour for the last week. A day or a week ends at the current hour and starts up to an hour earlier
+ * than exactly 24 or 168 hours ago.
+ * Hits stamped later than now plus the allowed clock skew are not counted, so one can't move the window ahead
+ * and clear it. The app and prefix filters apply to the top of all apps and uris, so an app or a prefix whose
+ * uris are not among the {@code stats.top.capacity} most viewed ones gets fewer than k entries or none.
+ */
+@Slf4j
+@Component
+public class TopHitsTracker implements HitBatchListener, SmartInitializingSingleton {
+    private static final int MINUTES = 60;
+    private static final int HOURS = 7 * 24;
+
+    private final StatsJdbcRepository statsJdbcRepository;
+    private final StatsRollupRepository statsRollupRepository;
+    private final int capacity;
+    private final Duration maxClockSkew;
+    private final SpaceSaving<AppUri>[] minutes;
+    private final SpaceSaving<AppUri>[] hours;
+    private boolean ready;
+    private long headMinute;
+    private long headHour;
+
+    @SuppressWarnings("unchecked")
+    public TopHitsTracker(StatsJdbcRepository statsJdbcRepository,
+                          StatsRollupRepository statsRollupRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${stats.top.capacity:500}") int capacity,
+                          @Value("${stats.ingest.max-clock-skew-ms:60000}") long maxClockSkewMs) {
+        this.statsJdbcRepository = statsJdbcRepository;
+        this.statsRollupRepository = statsRollupRepository;
+        this.capacity = capacity;
+        this.maxClockSkew = Duration.ofMillis(maxClockSkewMs);
+        this.minutes = new SpaceSaving[MINUTES];
+        this.hours = new SpaceSaving[HOURS];
+        Arrays.setAll(minutes, i -> new SpaceSaving<AppUri>(capacity));
+        Arrays.setAll(hours, i -> new SpaceSaving<AppUri>(capacity));
+
+        Gauge.builder("stats.top.entries", this, TopHitsTracker::size)
+                .description("Counters held by the top hits summaries")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long started = System.currentTimeMillis();
+        seed();
+        log.info("Top hits seeded in {} ms: {} counters, capacity {} per slice",
+                System.currentTimeMillis() - started, size(), capacity);
+    }
+
+    @Override
+    public synchronized void onHits(List<Stats> hits) {
+        if (!ready) {
+            return;
+        }
+        LocalDateTime latest = LocalDateTime.now().plus(maxClockSkew);
+        for (Stats hit : hits) {
+            if (!hit.getTimestamp().isAfter(latest)) {
+                add(new AppUri(hit.getApp(), hit.getUri()), hit.getTimestamp(), 1);
+            }
+        }
+    }
+
+    public synchronized List<ViewStatsDto> getTop(TopWindow window, int k, String app, String prefix) {
+        if (k > capacity) {
+            throw new ValidationException(String.format("k must not exceed %d", capacity));
+        }
+        advance(toMinute(LocalDateTime.now()));
+        Map<AppUri, Long> counts = new HashMap<>();
+        switch (window) {
+            case HOUR -> sum(minutes, headMinute, MINUTES, counts);
+            case DAY -> sum(hours, headHour, 24, counts);
+            case WEEK -> sum(hours, headHour, HOURS, counts);
+        }
+        return counts.entrySet().stream()
+                .filter(e -> app == null || e.getKey().app().equals(app))
+                .filter(e -> prefix == null || e.getKey().uri().startsWith(prefix))
+                .sorted(Map.Entry.<AppUri, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(k)
+                .map(e -> new ViewStatsDto(e.getKey().app(), e.getKey().uri(), e.getValue()))
+                .toList();
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (SpaceSaving<AppUri> minute : minutes) {
+            size += minute.size();
+        }
+        for (SpaceSaving<AppUri> hour : hours) {
+            size += hour.size();
+        }
+        return size;
+    }
+
+    private synchronized void seed() {
+        LocalDateTime now = LocalDateTime.now();
+        headMinute = toMinute(now);
+        headHour = Math.floorDiv(headMinute, MINUTES);
+        LocalDateTime firstHour = fromMinute((headHour - HOURS + 1) * MINUTES);
+        statsRollupRepository.streamHours(firstHour, fromMinute((headHour + 1) * MINUTES), hits ->
+                hourSlice(toMinute(hits.bucketStart()) / MINUTES).add(new AppUri(hits.app(), hits.uri()), hits.hits()));
+        statsJdbcRepository.streamCountsSince(fromMinute(headMinute - MINUTES + 1), hits -> {
+            long minute = toMinute(hits.bucketStart());
+            if (minute <= headMinute) {
+                minutes[slot(minute, MINUTES)].add(new AppUri(hits.app(), hits.uri()), hits.hits());
+            }
+        });
+        ready = true;
+    }
+
+    private void add(AppUri key, LocalDateTime timestamp, long count) {
+        long minute = toMinute(timestamp);
+        advance(minute);
+        if (minute > headMinute - MINUTES) {
+            minutes[slot(minute, MINUTES)].add(key, count);
+        }
+        long hour = Math.floorDiv(minute, MINUTES);
+        if (hour > headHour - HOURS) {
+            hourSlice(hour).add(key, count);
+        }
+    }
+
+    private SpaceSaving<AppUri> hourSlice(long hour) {
+        return hours[slot(hour, HOURS)];
+    }
+
+    private void advance(long minute) {
+        if (minute > headMinute) {
+            clear(minutes, headMinute, minute);
+            headMinute = minute;
+        }
+        long hour = Math.floorDiv(headMinute, MINUTES);
+        if (hour > headHour) {
+            clear(hours, headHour, hour);
+            headHour = hour;
+        }
+    }
+
+    // slices from head + 1 to next are reused for the new period
+    private static void clear(SpaceSaving<AppUri>[] slices, long head, long next) {
+        for (long i = Math.max(head + 1, next - slices.length + 1); i <= next; i++) {
+            slices[slot(i, slices.length)].clear();
+        }
+    }
+
+    private static void sum(SpaceSaving<AppUri>[] slices, long head, int count, Map<AppUri, Long> counts) {
+        for (long i = head - count + 1; i <= head; i++) {
+            slices[slot(i, slices.length)].forEach((key, hits) -> counts.merge(key, hits, Long::sum));
+        }
+    }
+
+    private static int slot(long index, int length) {
+        return (int) Math.floorMod(index, length);
+    }
+
+    private static long toMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static LocalDateTime fromMinute(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.server.counter;
+
+public enum TopWindow {
+    HOUR,
+    DAY,
+    WEEK
+}
@@ -0,0 +1,13 @@
+package ru.practicum.server.exception;
+
+import lombok.Getter;
+
+@Getter
+public class OverloadedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public OverloadedException(String msg, long retryAfterSeconds) {
+        super(msg);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.server.exception;
+
+import java.io.IOException;
+
+/**
+ * A request body grew past the allowed size while being read. An {@link IOException}, so it passes through
+ * the message converters as the cause of their read error.
+ */
+public class PayloadTooLargeException extends IOException {
+
+    public PayloadTooLargeException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,190 @@
+package ru.practicum.server.export;
+
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.model.AppUri;
+import ru.practicum.server.model.BucketHits;
+import ru.practicum.server.model.SeriesStep;
+import ru.practicum.server.model.Stats;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.InflaterInputStream;
+
+import static ru.practicum.server.export.HitColumns.fromMicros;
+import static ru.practicum.server.export.HitColumns.readVarint;
+import static ru.practicum.server.export.HitColumns.toMicros;
+import static ru.practicum.server.export.HitColumns.unzigzag;
+
+/**
+ * Reads files written by {@link HitColumnWriter} and computes the aggregates of {@code StatsRepository} offline:
+ * ranges are inclusive at both ends and results are sorted by hits, most visited first.
+ * Row groups outside the requested range are skipped without being decompressed.
+ * <p>
+ * From the command line: {@code HitColumnReader <file or directory> <start> <end> [uri,...] [unique]}.
+ */
+public class HitColumnReader {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final List<Path> files = new ArrayList<>();
+
+    public HitColumnReader(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> exported = Files.newDirectoryStream(path, "*" + HitColumns.EXTENSION)) {
+                exported.forEach(files::add);
+            }
+            files.sort(Comparator.naturalOrder());
+        } else {
+            files.add(path);
+        }
+    }
+
+    public void forEach(LocalDateTime start, LocalDateTime end, Consumer<Stats> consumer) throws IOException {
+        long from = toMicros(start);
+        long to = toMicros(end);
+        for (Path file : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != HitColumns.MAGIC || in.readByte() != HitColumns.VERSION) {
+                    throw new IOException("Not a hit column file: " + file);
+                }
+                while (readGroup(in, from, to, consumer)) {
+                    // groups are read until the end of the file
+                }
+            }
+        }
+    }
+
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique)
+            throws IOException {
+        Set<String> selected = uris == null || uris.isEmpty() ? null : new HashSet<>(uris);
+        Map<AppUri, Long> hits = new HashMap<>();
+        Map<AppUri, Set<ByteBuffer>> visitors = new HashMap<>();
+        forEach(start, end, hit -> {
+            if (selected != null && !selected.contains(hit.getUri())) {
+                return;
+            }
+            AppUri key = new AppUri(hit.getApp(), hit.getUri());
+            if (unique) {
+                visitors.computeIfAbsent(key, k -> new HashSet<>()).add(ByteBuffer.wrap(hit.getIp()));
+            } else {
+                hits.merge(key, 1L, Long::sum);
+            }
+        });
+        visitors.forEach((key, ips) -> hits.put(key, (long) ips.size()));
+
+        List<ViewStatsDto> stats = new ArrayList<>(hits.size());
+        hits.forEach((key, count) -> stats.add(new ViewStatsDto(key.app(), key.uri(), count)));
+        stats.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return stats;
+    }
+
+    public List<BucketHits> getSeries(SeriesStep step, LocalDateTime start, LocalDateTime end, List<String> uris,
+                                      boolean unique) throws IOException {
+        Set<String> selected = uris == null || uris.isEmpty() ? null : new HashSet<>(uris);
+        Map<BucketHits, Long> hits = new HashMap<>();
+        Map<BucketHits, Set<ByteBuffer>> visitors = new HashMap<>();
+        forEach(start, end, hit -> {
+            if (selected != null && !selected.contains(hit.getUri())) {
+                return;
+            }
+            BucketHits key = new BucketHits(hit.getApp(), hit.getUri(),
+                    hit.getTimestamp().truncatedTo(step.getUnit()), 0);
+            if (unique) {
+                visitors.computeIfAbsent(key, k -> new HashSet<>()).add(ByteBuffer.wrap(hit.getIp()));
+            } else {
+                hits.merge(key, 1L, Long::sum);
+            }
+        });
+        visitors.forEach((key, ips) -> hits.put(key, (long) ips.size()));
+
+        List<BucketHits> series = new ArrayList<>(hits.size());
+        hits.forEach((key, count) -> series.add(new BucketHits(key.app(), key.uri(), key.bucketStart(), count)));
+        series.sort(Comparator.comparing(BucketHits::bucketStart));
+        return series;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: HitColumnReader <file or directory> <start> <end> [uri,...] [unique]");
+            System.exit(2);
+        }
+        List<String> uris = args.length > 3 && !args[3].isEmpty() ? Arrays.asList(args[3].split(",")) : null;
+        boolean unique = args.length > 4 && Boolean.parseBoolean(args[4]);
+        new HitColumnReader(Path.of(args[0]))
+                .getStats(LocalDateTime.parse(args[1], FORMATTER), LocalDateTime.parse(args[2], FORMATTER), uris, unique)
+                .forEach(stats -> System.out.println(stats.getApp() + '\t' + stats.getUri() + '\t' + stats.getHits()));
+    }
+
+    // returns false at the end of the file
+    private boolean readGroup(DataInputStream in, long from, long to, Consumer<Stats> consumer) throws IOException {
+        int rows;
+        try {
+            rows = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        long minMicros = in.readLong();
+        long maxMicros = in.readLong();
+        String[] apps = readDictionary(in);
+        String[] uris = readDictionary(in);
+        byte[][] columns = new byte[4][];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = in.readNBytes(in.readInt());
+        }
+        if (maxMicros < from || minMicros > to) {
+            return true;
+        }
+
+        try (InputStream times = inflate(columns[0]);
+             InputStream appIds = inflate(columns[1]);
+             InputStream uriIds = inflate(columns[2]);
+             InputStream ips = inflate(columns[3])) {
+            long micros = 0;
+            for (int row = 0; row < rows; row++) {
+                micros += unzigzag(readVarint(times));
+                String app = apps[(int) readVarint(appIds)];
+                String uri = uris[(int) readVarint(uriIds)];
+                byte[] ip = ips.readNBytes(ips.read());
+                if (micros >= from && micros <= to) {
+                    consumer.accept(Stats.builder()
+                            .app(app)
+                            .uri(uri)
+                            .ip(ip)
+                            .timestamp(fromMicros(micros))
+                            .build());
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String[] readDictionary(DataInputStream in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    private static InputStream inflate(byte[] column) {
+        return new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(column)));
+    }
+}
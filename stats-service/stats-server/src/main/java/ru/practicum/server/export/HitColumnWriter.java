@@ -0,0 +1,120 @@
+package ru.practicum.server.export;
+
+import ru.practicum.server.model.Stats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static ru.practicum.server.export.HitColumns.toMicros;
+import static ru.practicum.server.export.HitColumns.writeVarint;
+import static ru.practicum.server.export.HitColumns.zigzag;
+
+/**
+ * Writes hits as a sequence of row groups. A group starts with its row count, time range and its own
+ * app and uri dictionaries, followed by four separately deflated columns:
+ * zigzag varint deltas of the timestamps in microseconds, varint app and uri dictionary indexes,
+ * and length-prefixed binary IPs. Hits written in time order compress best.
+ */
+public class HitColumnWriter implements Closeable {
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private final Map<String, Integer> apps = new LinkedHashMap<>();
+    private final Map<String, Integer> uris = new LinkedHashMap<>();
+    private final ByteArrayOutputStream times = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream appIds = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream uriIds = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream ips = new ByteArrayOutputStream();
+    private int rows;
+    private long minMicros;
+    private long maxMicros;
+    private long previousMicros;
+    private long written;
+
+    public HitColumnWriter(OutputStream out, int rowGroupSize) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.rowGroupSize = rowGroupSize;
+        this.out.writeInt(HitColumns.MAGIC);
+        this.out.writeByte(HitColumns.VERSION);
+    }
+
+    public void write(Stats hit) throws IOException {
+        long micros = toMicros(hit.getTimestamp());
+        if (rows == 0) {
+            minMicros = micros;
+            maxMicros = micros;
+            previousMicros = 0;
+        }
+        minMicros = Math.min(minMicros, micros);
+        maxMicros = Math.max(maxMicros, micros);
+        writeVarint(times, zigzag(micros - previousMicros));
+        previousMicros = micros;
+        writeVarint(appIds, apps.computeIfAbsent(hit.getApp(), app -> apps.size()));
+        writeVarint(uriIds, uris.computeIfAbsent(hit.getUri(), uri -> uris.size()));
+        ips.write(hit.getIp().length);
+        ips.write(hit.getIp());
+        rows++;
+        written++;
+        if (rows == rowGroupSize) {
+            flushGroup();
+        }
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                flushGroup();
+            }
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushGroup() throws IOException {
+        out.writeInt(rows);
+        out.writeLong(minMicros);
+        out.writeLong(maxMicros);
+        writeDictionary(apps);
+        writeDictionary(uris);
+        for (ByteArrayOutputStream column : new ByteArrayOutputStream[]{times, appIds, uriIds, ips}) {
+            byte[] compressed = deflate(column);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+            column.reset();
+        }
+        apps.clear();
+        uris.clear();
+        rows = 0;
+    }
+
+    private void writeDictionary(Map<String, Integer> dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (String value : dictionary.keySet()) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static byte[] deflate(ByteArrayOutputStream column) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(column.size() / 4 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream deflating = new DeflaterOutputStream(compressed, deflater)) {
+            column.writeTo(deflating);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,106 @@
+package ru.practicum.server.export;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.server.model.TimeRange;
+import ru.practicum.server.repository.StatsJdbcRepository;
+import ru.practicum.server.repository.StatsRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Exports each finished day of raw hits into a {@link HitColumnWriter} file {@code hits-<date>.hcol},
+ * so analytics run on the files with {@link HitColumnReader} instead of on the live database.
+ * Days missed while the server was down are exported on the next run, as long as their raw hits are kept.
+ * A day is exported once; hits that arrive for it later are only in the database.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.export.enabled", havingValue = "true")
+public class HitExporter {
+    private final StatsRepository statsRepository;
+    private final StatsJdbcRepository statsJdbcRepository;
+    private final Path dir;
+    private final int rowGroupSize;
+    private final int daysBack;
+    private final Counter exportedCounter;
+
+    public HitExporter(StatsRepository statsRepository,
+                       StatsJdbcRepository statsJdbcRepository,
+                       MeterRegistry meterRegistry,
+                       @Value("${stats.export.dir:export}") String dir,
+                       @Value("${stats.export.row-group-size:1000000}") int rowGroupSize,
+                       @Value("${stats.export.days-back:7}") int daysBack) throws IOException {
+        this.statsRepository = statsRepository;
+        this.statsJdbcRepository = statsJdbcRepository;
+        this.dir = Files.createDirectories(Path.of(dir));
+        this.rowGroupSize = rowGroupSize;
+        this.daysBack = daysBack;
+
+        this.exportedCounter = Counter.builder("stats.export.hits")
+                .description("Raw hits written to columnar export files")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${stats.export.cron:0 10 0 * * *}")
+    public void exportFinishedDays() {
+        try {
+            Optional<TimeRange> raw = statsJdbcRepository.getTimeRange();
+            if (raw.isEmpty()) {
+                return;
+            }
+            LocalDate today = LocalDate.now();
+            LocalDate first = raw.get().start().toLocalDate();
+            for (LocalDate day = first.isAfter(today.minusDays(daysBack)) ? first : today.minusDays(daysBack);
+                 day.isBefore(today); day = day.plusDays(1)) {
+                Path file = dir.resolve("hits-" + day + HitColumns.EXTENSION);
+                if (!Files.exists(file)) {
+                    export(day.atStartOfDay(), day.plusDays(1).atStartOfDay(), file);
+                }
+            }
+        } catch (IOException | DataAccessException e) {
+            log.error("Hit export failed", e);
+        }
+    }
+
+    // writes hits in [start, end) under a temporary name, so a file with the final name is always complete
+    public long export(LocalDateTime start, LocalDateTime end, Path file) throws IOException {
+        long started = System.currentTimeMillis();
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        long written;
+        try (HitColumnWriter writer = new HitColumnWriter(Files.newOutputStream(partial), rowGroupSize)) {
+            statsRepository.streamHits(start, end, hit -> {
+                try {
+                    writer.write(hit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            written = writer.getWritten();
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(partial);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        exportedCounter.increment(written);
+        log.info("Exported {} hits from {} to {} into {} ({} bytes) in {} ms", written, start, end, file,
+                Files.size(file), System.currentTimeMillis() - started);
+        return written;
+    }
+}
@@ -0,0 +1,153 @@
+package ru.practicum.server.filter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.practicum.server.exception.PayloadTooLargeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Inflates gzip request bodies. The inflated size is capped, since a few kilobytes of gzip can inflate to gigabytes;
+ * a body past the cap fails with {@link PayloadTooLargeException}, answered with 413.
+ */
+@Component
+public class GzipRequestFilter extends OncePerRequestFilter {
+    private static final String GZIP = "gzip";
+
+    private final long maxInflatedBytes;
+
+    public GzipRequestFilter(@Value("${stats.ingest.max-inflated-mb:64}") long maxInflatedMb) {
+        this.maxInflatedBytes = maxInflatedMb * 1024 * 1024;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !GZIP.equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        filterChain.doFilter(new GzipRequestWrapper(request, maxInflatedBytes), response);
+    }
+
+    private static class GzipRequestWrapper extends HttpServletRequestWrapper {
+        private final ServletInputStream inputStream;
+
+        GzipRequestWrapper(HttpServletRequest request, long maxInflatedBytes) throws IOException {
+            super(request);
+            this.inputStream = new GzipServletInputStream(new GZIPInputStream(request.getInputStream()),
+                    maxInflatedBytes);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) {
+                return null;
+            }
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) {
+                return Collections.emptyEnumeration();
+            }
+            return super.getHeaders(name);
+        }
+    }
+
+    // reads block on the compressed stream, so it is always ready and a read listener is run at once
+    private static class GzipServletInputStream extends ServletInputStream {
+        private final InputStream delegate;
+        private final long maxBytes;
+        private long bytes;
+        private boolean finished;
+
+        GzipServletInputStream(InputStream delegate, long maxBytes) {
+            this.delegate = delegate;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            count(b == -1 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = delegate.read(b, off, len);
+            count(read);
+            return read;
+        }
+
+        private void count(int read) throws PayloadTooLargeException {
+            finished = read == -1;
+            if (read > 0) {
+                bytes += read;
+                if (bytes > maxBytes) {
+                    throw new PayloadTooLargeException("Inflated request body is larger than " + maxBytes + " bytes");
+                }
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                readListener.onDataAvailable();
+                if (finished) {
+                    readListener.onAllDataRead();
+                }
+            } catch (IOException e) {
+                readListener.onError(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ru.practicum.server.ingest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.server.model.Stats;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "sync", matchIfMissing = true)
+public class DirectHitIngestor implements HitIngestor {
+
+    private final HitStore hitStore;
+
+    @Override
+    public void ingest(Stats hit) {
+        hitStore.save(List.of(hit));
+    }
+
+    @Override
+    public void ingestAll(List<Stats> hits) {
+        hitStore.save(hits);
+    }
+}
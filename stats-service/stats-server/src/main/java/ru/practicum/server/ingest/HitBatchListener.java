@@ -0,0 +1,16 @@
+package ru.practicum.server.ingest;
+
+import ru.practicum.server.model.Stats;
+
+import java.util.List;
+
+public interface HitBatchListener {
+
+    void onHits(List<Stats> hits);
+
+    default void beforeCommit(List<Stats> hits) {
+    }
+
+    default void afterCompletion(List<Stats> hits) {
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.server.ingest;
+
+import ru.practicum.server.model.Stats;
+
+import java.util.List;
+
+public interface HitIngestor {
+
+    void ingest(Stats hit);
+
+    void ingestAll(List<Stats> hits);
+
+    // share of the ingest buffer in use, from 0 when idle to 1 when full
+    default double backlog() {
+        return 0;
+    }
+}
@@ -0,0 +1,154 @@
+package ru.practicum.server.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.server.model.BucketKey;
+import ru.practicum.server.model.BucketHits;
+import ru.practicum.server.model.Stats;
+import ru.practicum.server.repository.AggregateCheckpointRepository;
+import ru.practicum.server.repository.StatsDictionary;
+import ru.practicum.server.repository.StatsJdbcRepository;
+import ru.practicum.server.repository.StatsRollupRepository;
+import ru.practicum.server.repository.StatsSketchRepository;
+import ru.practicum.server.repository.StatsVisitorRepository;
+import ru.practicum.dto.VisitorBitmap;
+import ru.practicum.dto.HyperLogLog;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stores hits together with their hourly rollups.
+ * Daily aggregates are built by {@link ru.practicum.server.storage.HitStorageMaintainer} once a day is over;
+ * only hits of days sealed already are merged into them here.
+ */
+@Component
+public class HitStore {
+
+    private final StatsDictionary statsDictionary;
+    private final StatsJdbcRepository statsJdbcRepository;
+    private final StatsRollupRepository statsRollupRepository;
+    private final StatsSketchRepository statsSketchRepository;
+    private final StatsVisitorRepository statsVisitorRepository;
+    private final AggregateCheckpointRepository aggregateCheckpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final List<HitBatchListener> listeners;
+    private final Duration lateAfter;
+    private final Counter lateCounter;
+
+    public HitStore(StatsDictionary statsDictionary,
+                    StatsJdbcRepository statsJdbcRepository,
+                    StatsRollupRepository statsRollupRepository,
+                    StatsSketchRepository statsSketchRepository,
+                    StatsVisitorRepository statsVisitorRepository,
+                    AggregateCheckpointRepository aggregateCheckpointRepository,
+                    TransactionTemplate transactionTemplate,
+                    List<HitBatchListener> listeners,
+                    MeterRegistry meterRegistry,
+                    @Value("${stats.seal.delay-minutes:60}") long sealDelayMinutes) {
+        this.statsDictionary = statsDictionary;
+        this.statsJdbcRepository = statsJdbcRepository;
+        this.statsRollupRepository = statsRollupRepository;
+        this.statsSketchRepository = statsSketchRepository;
+        this.statsVisitorRepository = statsVisitorRepository;
+        this.aggregateCheckpointRepository = aggregateCheckpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.listeners = listeners;
+        // a day is sealed once it is over by the whole delay, so a hit younger than half of it can't be late
+        // unless its transaction runs for the other half
+        this.lateAfter = Duration.ofMinutes(sealDelayMinutes).dividedBy(2);
+        this.lateCounter = Counter.builder("stats.ingest.late")
+                .description("Hits merged into the aggregates of days sealed before they arrived")
+                .register(meterRegistry);
+    }
+
+    public void save(List<Stats> hits) {
+        save(hits, () -> {
+        });
+    }
+
+    // inTransaction commits or rolls back together with the hits
+    public void save(List<Stats> hits, Runnable inTransaction) {
+        statsDictionary.resolve(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            statsJdbcRepository.saveAll(hits);
+            inTransaction.run();
+            List<Stats> late = late(hits);
+            statsRollupRepository.increment(rollUp(hits));
+            if (!late.isEmpty()) {
+                statsSketchRepository.merge(sketch(late));
+                statsVisitorRepository.merge(visitors(late));
+                lateCounter.increment(late.size());
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    listeners.forEach(listener -> listener.beforeCommit(hits));
+                }
+
+                @Override
+                public void afterCommit() {
+                    listeners.forEach(listener -> listener.onHits(hits));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    listeners.forEach(listener -> listener.afterCompletion(hits));
+                }
+            });
+        });
+    }
+
+    // the checkpoint is locked before the day of a hit is compared with it, so the maintainer can't seal the day
+    // in between; current hits don't take the lock
+    private List<Stats> late(List<Stats> hits) {
+        LocalDateTime recent = LocalDateTime.now().minus(lateAfter);
+        if (hits.stream().noneMatch(hit -> hit.getTimestamp().isBefore(recent))) {
+            return List.of();
+        }
+        return aggregateCheckpointRepository.lock()
+                .map(sealedTo -> hits.stream().filter(hit -> hit.getTimestamp().isBefore(sealedTo)).toList())
+                .orElse(List.of());
+    }
+
+    private List<BucketHits> rollUp(List<Stats> hits) {
+        Map<BucketKey, Long> counts = new TreeMap<>();
+        for (Stats hit : hits) {
+            BucketKey key = new BucketKey(hit.getApp(), hit.getUri(),
+                    hit.getTimestamp().truncatedTo(ChronoUnit.HOURS));
+            counts.merge(key, 1L, Long::sum);
+        }
+        return counts.entrySet().stream()
+                .map(e -> new BucketHits(e.getKey().app(), e.getKey().uri(), e.getKey().bucketStart(), e.getValue()))
+                .toList();
+    }
+
+    private Map<BucketKey, HyperLogLog> sketch(List<Stats> hits) {
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>();
+        for (Stats hit : hits) {
+            BucketKey key = new BucketKey(hit.getApp(), hit.getUri(),
+                    hit.getTimestamp().truncatedTo(ChronoUnit.DAYS));
+            sketches.computeIfAbsent(key, k -> new HyperLogLog()).offer(hit.getIp());
+        }
+        return sketches;
+    }
+
+    private Map<BucketKey, VisitorBitmap> visitors(List<Stats> hits) {
+        Map<BucketKey, VisitorBitmap> visitors = new TreeMap<>();
+        for (Stats hit : hits) {
+            BucketKey key = new BucketKey(hit.getApp(), hit.getUri(),
+                    hit.getTimestamp().truncatedTo(ChronoUnit.DAYS));
+            visitors.computeIfAbsent(key, k -> new VisitorBitmap()).offer(hit.getIp());
+        }
+        return visitors;
+    }
+}
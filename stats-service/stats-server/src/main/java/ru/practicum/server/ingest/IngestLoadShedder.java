@@ -0,0 +1,108 @@
+package ru.practicum.server.ingest;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.practicum.server.exception.OverloadedException;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Rejects ingest requests with 503 and {@code Retry-After} while the ingest backlog
+ * or the connection pool is above its threshold, before the request body is read.
+ * Clients back off instead of queueing on a server that can't keep up.
+ */
+@Slf4j
+@Component
+public class IngestLoadShedder implements HandlerInterceptor {
+    private final HitIngestor hitIngestor;
+    private final HikariDataSource hikariDataSource;
+    private final boolean enabled;
+    private final double backlogThreshold;
+    private final double poolThreshold;
+    private final long retryAfterSeconds;
+    private final Counter acceptedCounter;
+    private final Counter backlogShedCounter;
+    private final Counter poolShedCounter;
+
+    public IngestLoadShedder(HitIngestor hitIngestor,
+                             DataSource dataSource,
+                             MeterRegistry meterRegistry,
+                             @Value("${stats.ingest.shed.enabled:true}") boolean enabled,
+                             @Value("${stats.ingest.shed.backlog-threshold:0.9}") double backlogThreshold,
+                             @Value("${stats.ingest.shed.pool-threshold:1.5}") double poolThreshold,
+                             @Value("${stats.ingest.shed.retry-after-seconds:1}") long retryAfterSeconds)
+            throws SQLException {
+        this.hitIngestor = hitIngestor;
+        this.hikariDataSource = dataSource.isWrapperFor(HikariDataSource.class)
+                ? dataSource.unwrap(HikariDataSource.class)
+                : null;
+        this.enabled = enabled;
+        this.backlogThreshold = backlogThreshold;
+        this.poolThreshold = poolThreshold;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        this.acceptedCounter = Counter.builder("stats.ingest.requests")
+                .tag("result", "accepted")
+                .description("Ingest requests let through")
+                .register(meterRegistry);
+        this.backlogShedCounter = Counter.builder("stats.ingest.requests")
+                .tag("result", "shed")
+                .tag("reason", "backlog")
+                .description("Ingest requests rejected because the ingest backlog was full")
+                .register(meterRegistry);
+        this.poolShedCounter = Counter.builder("stats.ingest.requests")
+                .tag("result", "shed")
+                .tag("reason", "pool")
+                .description("Ingest requests rejected because the connection pool was saturated")
+                .register(meterRegistry);
+        if (enabled && hikariDataSource == null) {
+            log.info("Data source is not a Hikari pool, ingest is shed on backlog only");
+        }
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request,
+                             @NonNull HttpServletResponse response,
+                             @NonNull Object handler) {
+        if (!enabled) {
+            return true;
+        }
+        double backlog = hitIngestor.backlog();
+        if (backlog >= backlogThreshold) {
+            backlogShedCounter.increment();
+            throw new OverloadedException(String.format("Ingest backlog is %.0f%% full", backlog * 100),
+                    retryAfterSeconds);
+        }
+        double pool = poolUtilisation();
+        if (pool >= poolThreshold) {
+            poolShedCounter.increment();
+            throw new OverloadedException(String.format("Connection pool is %.0f%% utilised", pool * 100),
+                    retryAfterSeconds);
+        }
+        acceptedCounter.increment();
+        return true;
+    }
+
+    // callers waiting for a connection count on top of the busy ones, so the value can exceed 1
+    private double poolUtilisation() {
+        if (hikariDataSource == null) {
+            return 0;
+        }
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return 0;
+        }
+        return (double) (pool.getActiveConnections() + pool.getThreadsAwaitingConnection())
+                / hikariDataSource.getMaximumPoolSize();
+    }
+}
@@ -0,0 +1,244 @@
+package ru.practicum.server.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.server.model.Stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "async")
+public class QueuedHitIngestor implements HitIngestor, SmartLifecycle {
+
+    private final HitStore hitStore;
+    private final BlockingQueue<Stats> queue;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long shutdownTimeoutMs;
+    private final int retryAttempts;
+    private final long retryBackoffMs;
+    // producers offer under the read lock and stop() flips running under the write lock,
+    // so no hit can enter the queue after the writer was told to drain it and exit
+    private final ReadWriteLock accepting = new ReentrantReadWriteLock();
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+    private final Counter overflowCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+    private volatile boolean running;
+    private Thread writer;
+
+    public QueuedHitIngestor(HitStore hitStore,
+                             MeterRegistry meterRegistry,
+                             @Value("${stats.ingest.queue-capacity:100000}") int queueCapacity,
+                             @Value("${stats.ingest.batch-size:500}") int batchSize,
+                             @Value("${stats.ingest.flush-interval-ms:200}") long flushIntervalMs,
+                             @Value("${stats.ingest.shutdown-timeout-ms:30000}") long shutdownTimeoutMs,
+                             @Value("${stats.ingest.retry-attempts:3}") int retryAttempts,
+                             @Value("${stats.ingest.retry-backoff-ms:100}") long retryBackoffMs) {
+        this.hitStore = hitStore;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.retryAttempts = retryAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+
+        Gauge.builder("stats.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Hits waiting to be written")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("stats.ingest.batch.size")
+                .description("Hits written per batch insert")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.ingest.flush.latency")
+                .description("Time spent writing one batch")
+                .register(meterRegistry);
+        this.overflowCounter = Counter.builder("stats.ingest.overflow")
+                .description("Hits written synchronously because the queue was full")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("stats.ingest.retries")
+                .description("Batch inserts retried after a failure")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("stats.ingest.failed")
+                .description("Hits lost because neither the batch nor the single insert could write them")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void ingest(Stats hit) {
+        accepting.readLock().lock();
+        try {
+            if (running && queue.offer(hit)) {
+                return;
+            }
+        } finally {
+            accepting.readLock().unlock();
+        }
+        overflowCounter.increment();
+        hitStore.save(List.of(hit));
+    }
+
+    @Override
+    public void ingestAll(List<Stats> hits) {
+        hits.forEach(this::ingest);
+    }
+
+    @Override
+    public double backlog() {
+        return (double) queue.size() / queueCapacity;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::drain, "stats-hit-writer");
+        writer.start();
+        log.info("Hit writer started: batch size {}, flush interval {} ms", batchSize,
+                TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos));
+    }
+
+    @Override
+    public void stop() {
+        stopAccepting();
+        try {
+            writer.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Hit writer did not finish in {} ms, {} hits left in queue", shutdownTimeoutMs, queue.size());
+        } else {
+            log.info("Hit writer stopped, queue flushed");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void drain() {
+        List<Stats> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                fill(batch);
+            } catch (InterruptedException e) {
+                // every further poll would throw at once, so take what is left without waiting and exit
+                Thread.currentThread().interrupt();
+                stopAccepting();
+                drainRemaining(batch);
+                return;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void drainRemaining(List<Stats> batch) {
+        queue.drainTo(batch, batchSize - batch.size());
+        while (!batch.isEmpty()) {
+            flush(batch);
+            batch.clear();
+            queue.drainTo(batch, batchSize);
+        }
+    }
+
+    private void stopAccepting() {
+        accepting.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            accepting.writeLock().unlock();
+        }
+    }
+
+    private void fill(List<Stats> batch) throws InterruptedException {
+        Stats first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            Stats next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    // a failed batch is retried with a doubling backoff, then written hit by hit,
+    // so only hits the database rejects on their own are lost
+    private void flush(List<Stats> batch) {
+        long started = System.nanoTime();
+        try {
+            long backoffMs = retryBackoffMs;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    hitStore.save(batch);
+                    batchSizeSummary.record(batch.size());
+                    log.debug("Flushed {} hits", batch.size());
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= retryAttempts || !backoff(backoffMs)) {
+                        log.warn("Failed to write a batch of {} hits, writing them one by one", batch.size(), e);
+                        break;
+                    }
+                    retryCounter.increment();
+                    log.warn("Failed to write {} hits, retrying in {} ms: {}", batch.size(), backoffMs, e.getMessage());
+                    backoffMs *= 2;
+                }
+            }
+            for (Stats hit : batch) {
+                try {
+                    hitStore.save(List.of(hit));
+                } catch (RuntimeException e) {
+                    failedCounter.increment();
+                    log.error("Failed to write hit {}", hit, e);
+                }
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private boolean backoff(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ru.practicum.server.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.server.model.Stats;
+import ru.practicum.server.repository.WalCheckpointRepository;
+import ru.practicum.server.wal.HitLog;
+import ru.practicum.server.wal.WalPosition;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Acknowledges hits once they are appended to the memory-mapped {@link HitLog}
+ * and applies the log to the database in the background.
+ * The applied position is stored in the same transaction as the hits, so every hit is applied exactly once.
+ * A batch failing repeatedly is applied hit by hit, and a hit the database rejects on its own is moved to
+ * a dead-letter log next to the segments, so one bad record can't stall the log.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "wal")
+public class WalHitIngestor implements HitIngestor, SmartLifecycle {
+    private static final long MAX_RETRY_DELAY_MS = 30000;
+    private static final int DEAD_LETTER_SEGMENT_SIZE = 1024 * 1024;
+
+    private final HitStore hitStore;
+    private final WalCheckpointRepository walCheckpointRepository;
+    private final HitLog hitLog;
+    private final HitLog deadLetterLog;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long forceIntervalNanos;
+    private final long shutdownTimeoutMs;
+    private final long maxLagBytes;
+    private final int retryAttempts;
+    private final Counter appliedCounter;
+    private final Counter failedCounter;
+    private final Counter deadLetterCounter;
+    private volatile boolean running;
+    private volatile WalPosition applied;
+    private Thread applier;
+
+    public WalHitIngestor(HitStore hitStore,
+                          WalCheckpointRepository walCheckpointRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${stats.wal.dir:wal}") String dir,
+                          @Value("${stats.wal.segment-size-mb:64}") int segmentSizeMb,
+                          @Value("${stats.wal.batch-size:500}") int batchSize,
+                          @Value("${stats.wal.flush-interval-ms:200}") long flushIntervalMs,
+                          @Value("${stats.wal.force-interval-ms:1000}") long forceIntervalMs,
+                          @Value("${stats.wal.max-lag-mb:1024}") long maxLagMb,
+                          @Value("${stats.ingest.shutdown-timeout-ms:30000}") long shutdownTimeoutMs,
+                          @Value("${stats.ingest.retry-attempts:3}") int retryAttempts)
+            throws IOException {
+        this.hitStore = hitStore;
+        this.walCheckpointRepository = walCheckpointRepository;
+        this.hitLog = new HitLog(Path.of(dir), segmentSizeMb * 1024 * 1024);
+        this.deadLetterLog = new HitLog(Path.of(dir, "dead-letter"), DEAD_LETTER_SEGMENT_SIZE);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(forceIntervalMs);
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.maxLagBytes = maxLagMb * 1024 * 1024;
+        this.retryAttempts = retryAttempts;
+
+        Gauge.builder("stats.wal.lag", this, WalHitIngestor::lag)
+                .description("Bytes of logged hits not yet applied to the database")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("stats.wal.segments", hitLog, HitLog::segmentCount)
+                .description("Log segment files on disk")
+                .register(meterRegistry);
+        this.appliedCounter = Counter.builder("stats.wal.applied")
+                .description("Logged hits applied to the database")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("stats.wal.failed")
+                .description("Failed attempts to apply a batch of logged hits")
+                .register(meterRegistry);
+        this.deadLetterCounter = Counter.builder("stats.wal.dead-lettered")
+                .description("Logged hits rejected by the database and moved to the dead-letter log")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void ingest(Stats hit) {
+        ingestAll(List.of(hit));
+    }
+
+    @Override
+    public void ingestAll(List<Stats> hits) {
+        if (!running) {
+            hitStore.save(hits);
+            return;
+        }
+        hitLog.append(hits);
+        if (forceIntervalNanos == 0) {
+            hitLog.force();
+        }
+    }
+
+    @Override
+    public double backlog() {
+        return (double) lag() / maxLagBytes;
+    }
+
+    @Override
+    public void start() {
+        applied = walCheckpointRepository.find()
+                .filter(checkpoint -> checkpoint.segment() <= hitLog.end().segment())
+                .orElseGet(hitLog::start);
+        running = true;
+        applier = new Thread(this::apply, "stats-wal-applier");
+        applier.start();
+        log.info("Hit log applier started at {}, {} bytes behind", applied, lag());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(applier);
+        try {
+            applier.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        hitLog.close();
+        deadLetterLog.close();
+        if (applier.isAlive()) {
+            log.warn("Hit log applier did not finish in {} ms, {} bytes left to apply on restart",
+                    shutdownTimeoutMs, lag());
+        } else {
+            log.info("Hit log applier stopped, log applied");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private long lag() {
+        WalPosition position = applied;
+        return position == null ? 0 : hitLog.lag(position);
+    }
+
+    private void apply() {
+        List<Stats> batch = new ArrayList<>(batchSize);
+        long retryDelayMs = 0;
+        int failures = 0;
+        long lastForce = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            if (forceIntervalNanos > 0 && System.nanoTime() - lastForce >= forceIntervalNanos) {
+                hitLog.force();
+                lastForce = System.nanoTime();
+            }
+            batch.clear();
+            WalPosition next = hitLog.read(applied, batchSize, batch);
+            if (batch.isEmpty()) {
+                applied = next;
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(flushIntervalNanos);
+                continue;
+            }
+            try {
+                if (failures < retryAttempts) {
+                    hitStore.save(batch, () -> walCheckpointRepository.save(next));
+                    appliedCounter.increment(batch.size());
+                    applied = next;
+                } else {
+                    applyOneByOne(batch.size());
+                }
+                hitLog.deleteBefore(applied.segment());
+                failures = 0;
+                retryDelayMs = 0;
+            } catch (RuntimeException e) {
+                failures++;
+                failedCounter.increment();
+                retryDelayMs = Math.min(Math.max(2 * retryDelayMs, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos)),
+                        MAX_RETRY_DELAY_MS);
+                log.error("Failed to apply {} logged hits, retrying in {} ms", batch.size(), retryDelayMs, e);
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryDelayMs));
+                continue;
+            }
+            if (batch.size() < batchSize && running) {
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+    }
+
+    // every hit is stored with its own checkpoint; an exception leaves applied at the first hit not yet stored
+    private void applyOneByOne(int count) {
+        List<Stats> hit = new ArrayList<>(1);
+        for (int i = 0; i < count; i++) {
+            hit.clear();
+            WalPosition next = hitLog.read(applied, 1, hit);
+            try {
+                hitStore.save(hit, () -> walCheckpointRepository.save(next));
+                appliedCounter.increment();
+            } catch (RuntimeException e) {
+                // a hit failing while the database still answers is rejected by the database itself;
+                // reading the checkpoint throws while it is down, so the hit then stays in the log
+                walCheckpointRepository.find();
+                deadLetterLog.append(hit);
+                deadLetterLog.force();
+                walCheckpointRepository.save(next);
+                deadLetterCounter.increment();
+                log.error("Logged hit of {} {} rejected by the database, moved to the dead-letter log",
+                        hit.get(0).getApp(), hit.get(0).getUri(), e);
+            }
+            applied = next;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package ru.practicum.server.mapper;
 
 import ru.practicum.dto.HitEndpointDto;
+import ru.practicum.server.exception.ValidationException;
 import ru.practicum.server.model.Stats;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
 public class StatsMapper {
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
 
     public static Stats fromDto(HitEndpointDto dto) {
         if (dto == null) {
@@ -13,7 +19,7 @@ public class StatsMapper {
         return Stats.builder()
                 .app(dto.getApp())
                 .uri(dto.getUri())
-                .ip(dto.getIp())
+                .ip(toBytes(dto.getIp()))
                 .timestamp(dto.getTimestamp())
                 .build();
     }
@@ -26,9 +32,28 @@ public class StatsMapper {
         return HitEndpointDto.builder()
                 .app(stats.getApp())
                 .uri(stats.getUri())
-                .ip(stats.getIp())
+                .ip(fromBytes(stats.getIp()))
                 .timestamp(stats.getTimestamp())
                 .build();
     }
-}
 
+    // only literals are accepted, so InetAddress never falls back to a DNS lookup
+    public static byte[] toBytes(String ip) {
+        if (ip == null || !(IPV4.matcher(ip).matches() || ip.indexOf(':') >= 0)) {
+            throw new ValidationException("Invalid IP address: " + ip);
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            throw new ValidationException("Invalid IP address: " + ip);
+        }
+    }
+
+    public static String fromBytes(byte[] ip) {
+        try {
+            return InetAddress.getByAddress(ip).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid IP address length: " + ip.length);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.server.model;
+
+import java.time.LocalDateTime;
+
+public record BucketHits(String app, String uri, LocalDateTime bucketStart, long hits) {
+}
@@ -0,0 +1,15 @@
+package ru.practicum.server.model;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+public record BucketKey(String app, String uri, LocalDateTime bucketStart) implements Comparable<BucketKey> {
+    private static final Comparator<BucketKey> ORDER = Comparator.comparing(BucketKey::uri)
+            .thenComparing(BucketKey::bucketStart)
+            .thenComparing(BucketKey::app);
+
+    @Override
+    public int compareTo(BucketKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,24 @@
+package ru.practicum.server.model;
+
+import java.time.temporal.ChronoUnit;
+
+public enum SeriesStep {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    SeriesStep(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    // field name understood by DATE_TRUNC on PostgreSQL and H2
+    public String getField() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,37 @@
+package ru.practicum.server.model;
+
+import ru.practicum.dto.ViewStatsDto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the offered stats with the most hits, at most limit of them, or all of them when limit is null.
+ */
+public class TopStats {
+    private static final Comparator<ViewStatsDto> BY_HITS = Comparator.comparing(ViewStatsDto::getHits);
+
+    private final Integer limit;
+    // fewest hits on top, so it is the one dropped when the limit is exceeded
+    private final PriorityQueue<ViewStatsDto> stats = new PriorityQueue<>(BY_HITS);
+
+    public TopStats(Integer limit) {
+        this.limit = limit;
+    }
+
+    public void offer(ViewStatsDto stat) {
+        stats.add(stat);
+        if (limit != null && stats.size() > limit) {
+            stats.poll();
+        }
+    }
+
+    // most hits first
+    public List<ViewStatsDto> toList() {
+        List<ViewStatsDto> sorted = new ArrayList<>(stats);
+        sorted.sort(BY_HITS.reversed());
+        return sorted;
+    }
+}
@@ -0,0 +1,45 @@
+package ru.practicum.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * The day up to which daily aggregates are sealed: they were built from the raw hits of the day,
+ * and hits arriving later for such a day are merged into them when stored.
+ */
+@Repository
+@RequiredArgsConstructor
+public class AggregateCheckpointRepository {
+    private static final int ID = 1;
+    private static final String SELECT = "SELECT sealed_to FROM aggregate_checkpoint WHERE id = ?";
+    private static final String SELECT_FOR_UPDATE = SELECT + " FOR UPDATE";
+    private static final String UPDATE = "UPDATE aggregate_checkpoint SET sealed_to = ? WHERE id = ?";
+    private static final String INSERT = "INSERT INTO aggregate_checkpoint (id, sealed_to) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Optional<LocalDateTime> find() {
+        return query(SELECT);
+    }
+
+    // holds the row until the end of the transaction, so the sealed day can't move meanwhile
+    public Optional<LocalDateTime> lock() {
+        return query(SELECT_FOR_UPDATE);
+    }
+
+    public void save(LocalDateTime sealedTo) {
+        if (jdbcTemplate.update(UPDATE, Timestamp.valueOf(sealedTo), ID) == 0) {
+            jdbcTemplate.update(INSERT, ID, Timestamp.valueOf(sealedTo));
+        }
+    }
+
+    private Optional<LocalDateTime> query(String sql) {
+        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getTimestamp("sealed_to").toLocalDateTime(), ID)
+                .stream().findFirst();
+    }
+}
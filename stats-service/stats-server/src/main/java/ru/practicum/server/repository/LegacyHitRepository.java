@@ -0,0 +1,91 @@
+package ru.practicum.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Rows of the first version of {@code hits}, which kept app, uri and ip as strings in a plain table.
+ * The schema initializer renames that table to {@code hits_legacy} before the schema scripts run,
+ * so they can create the current table under its name.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LegacyHitRepository {
+    private static final String TABLE = "hits_legacy";
+    private static final String SELECT_BATCH = "SELECT id, app, uri, ip, time_stamp FROM hits_legacy " +
+            "ORDER BY id LIMIT ?";
+    private static final String DELETE_UP_TO = "DELETE FROM hits_legacy WHERE id <= ?";
+    private static final String DROP = "DROP TABLE hits_legacy";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record LegacyHit(long id, String app, String uri, String ip, LocalDateTime timestamp) {
+    }
+
+    public boolean exists() {
+        return hasColumn(jdbcTemplate.getDataSource(), TABLE, "id");
+    }
+
+    public List<LegacyHit> findBatch(int size) {
+        return jdbcTemplate.query(SELECT_BATCH, (rs, rowNum) -> new LegacyHit(rs.getLong("id"), rs.getString("app"),
+                rs.getString("uri"), rs.getString("ip"), rs.getTimestamp("time_stamp").toLocalDateTime()), size);
+    }
+
+    public void deleteUpTo(long id) {
+        jdbcTemplate.update(DELETE_UP_TO, id);
+    }
+
+    public void drop() {
+        jdbcTemplate.execute(DROP);
+    }
+
+    /**
+     * Renames the first version of {@code hits}, recognized by its {@code app} column, to {@code hits_legacy}.
+     * Runs before the schema scripts, so it works on the data source directly.
+     *
+     * @return whether the table was renamed
+     */
+    public static boolean moveAside(DataSource dataSource, boolean postgres) {
+        if (!hasColumn(dataSource, "hits", "app")) {
+            return false;
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("ALTER TABLE hits RENAME TO " + TABLE);
+        if (postgres) {
+            // the identity sequence keeps its name, which the new table would take
+            String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence(?, 'id')",
+                    String.class, TABLE);
+            if (sequence != null) {
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RENAME TO " + TABLE + "_id_seq");
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasColumn(DataSource dataSource, String table, String column) {
+        try {
+            return JdbcUtils.extractDatabaseMetaData(dataSource, metaData -> hasColumn(metaData, table, column));
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Can't read columns of " + table, e);
+        }
+    }
+
+    private static boolean hasColumn(DatabaseMetaData metaData, String table, String column) throws SQLException {
+        boolean upper = metaData.storesUpperCaseIdentifiers();
+        String schema = metaData.getConnection().getSchema();
+        try (ResultSet columns = metaData.getColumns(metaData.getConnection().getCatalog(), schema,
+                upper ? table.toUpperCase() : table, upper ? column.toUpperCase() : column)) {
+            return columns.next();
+        }
+    }
+}
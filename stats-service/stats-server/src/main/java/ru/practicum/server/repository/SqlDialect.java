@@ -0,0 +1,28 @@
+package ru.practicum.server.repository;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+@Slf4j
+@Getter
+@Component
+public class SqlDialect {
+    private final boolean postgres;
+
+    public SqlDialect(DataSource dataSource) {
+        String product;
+        try {
+            product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Can't detect database product", e);
+        }
+        this.postgres = "PostgreSQL".equalsIgnoreCase(product);
+        log.info("Stats storage runs on {}", product);
+    }
+}
@@ -0,0 +1,117 @@
+package ru.practicum.server.repository;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.server.model.Stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Interns app names and uris into the {@code apps} and {@code uris} tables so hits can store integer ids.
+ * Ids are created outside of the hit batch transaction, so a cached id never refers to a rolled back row.
+ * Cached values are sorted, so all uris with a common prefix are a contiguous range.
+ */
+@Repository
+public class StatsDictionary implements SmartInitializingSingleton {
+    private static final String INSERT_POSTGRES = "INSERT INTO %1$s (%2$s) VALUES (:name) " +
+            "ON CONFLICT (%2$s) DO NOTHING";
+    private static final String INSERT_STANDARD = "MERGE INTO %1$s AS d " +
+            "USING (VALUES (CAST(:name AS VARCHAR(256)))) AS v (name) " +
+            "ON d.%2$s = v.name " +
+            "WHEN NOT MATCHED THEN INSERT (%2$s) VALUES (v.name)";
+    private static final String SELECT_IDS = "SELECT id, %2$s AS name FROM %1$s WHERE %2$s IN (:names)";
+    private static final String SELECT_ALL = "SELECT id, %2$s AS name FROM %1$s";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Dictionary apps;
+    private final Dictionary uris;
+
+    public StatsDictionary(NamedParameterJdbcTemplate jdbcTemplate, SqlDialect dialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        String insert = dialect.isPostgres() ? INSERT_POSTGRES : INSERT_STANDARD;
+        this.apps = new Dictionary("apps", "app", insert);
+        this.uris = new Dictionary("uris", "uri", insert);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        apps.load();
+        uris.load();
+    }
+
+    public void resolve(List<Stats> hits) {
+        apps.resolve(hits, Stats::getApp);
+        uris.resolve(hits, Stats::getUri);
+    }
+
+    public int appId(String app) {
+        return apps.id(app);
+    }
+
+    public int uriId(String uri) {
+        return uris.id(uri);
+    }
+
+    public List<String> urisWithPrefix(String prefix) {
+        List<String> matching = new ArrayList<>();
+        for (String uri : uris.ids.tailMap(prefix).keySet()) {
+            if (!uri.startsWith(prefix)) {
+                break;
+            }
+            matching.add(uri);
+        }
+        return matching;
+    }
+
+    private final class Dictionary {
+        private final NavigableMap<String, Integer> ids = new ConcurrentSkipListMap<>();
+        private final String insert;
+        private final String select;
+        private final String selectAll;
+
+        private Dictionary(String table, String column, String insert) {
+            this.insert = String.format(insert, table, column);
+            this.select = String.format(SELECT_IDS, table, column);
+            this.selectAll = String.format(SELECT_ALL, table, column);
+        }
+
+        private void load() {
+            jdbcTemplate.query(selectAll, rs -> {
+                ids.put(rs.getString("name"), rs.getInt("id"));
+            });
+        }
+
+        private void resolve(List<Stats> hits, Function<Stats, String> value) {
+            Set<String> missing = hits.stream()
+                    .map(value)
+                    .filter(v -> !ids.containsKey(v))
+                    .collect(Collectors.toCollection(TreeSet::new));
+            if (missing.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate(insert, missing.stream()
+                    .map(v -> new MapSqlParameterSource("name", v))
+                    .toArray(MapSqlParameterSource[]::new));
+            jdbcTemplate.query(select, new MapSqlParameterSource("names", missing), rs -> {
+                ids.put(rs.getString("name"), rs.getInt("id"));
+            });
+        }
+
+        private int id(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                throw new IllegalStateException("Unresolved dictionary value " + value);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ru.practicum.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.server.model.BucketHits;
+import ru.practicum.server.model.Stats;
+import ru.practicum.server.model.TimeRange;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@Repository
+@RequiredArgsConstructor
+public class StatsJdbcRepository {
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, time_stamp) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_TIME_RANGE = "SELECT MIN(time_stamp), MAX(time_stamp) FROM hits";
+    private static final String SELECT_FIRST_BEFORE = "SELECT MIN(time_stamp) FROM hits WHERE time_stamp < ?";
+    private static final String SELECT_COUNTS_SINCE = "SELECT a.app, u.uri, h.time_stamp, h.hits " +
+            "FROM (SELECT app_id, uri_id, time_stamp, COUNT(*) AS hits " +
+            "FROM hits " +
+            "WHERE time_stamp >= ? " +
+            "GROUP BY app_id, uri_id, time_stamp) AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id";
+    private static final String DELETE_BETWEEN = "DELETE FROM hits WHERE time_stamp >= ? AND time_stamp < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StatsDictionary dictionary;
+
+    @Transactional
+    public void saveAll(List<Stats> hits) {
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, hits.size(), (ps, hit) -> {
+            ps.setInt(1, dictionary.appId(hit.getApp()));
+            ps.setInt(2, dictionary.uriId(hit.getUri()));
+            ps.setBytes(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+
+    public Optional<TimeRange> getTimeRange() {
+        return jdbcTemplate.query(SELECT_TIME_RANGE, rs -> {
+            rs.next();
+            Timestamp min = rs.getTimestamp(1);
+            Timestamp max = rs.getTimestamp(2);
+            return min == null ? Optional.empty() : Optional.of(new TimeRange(min.toLocalDateTime(), max.toLocalDateTime()));
+        });
+    }
+
+    public void streamCountsSince(LocalDateTime from, Consumer<BucketHits> consumer) {
+        jdbcTemplate.query(SELECT_COUNTS_SINCE, rs -> {
+            consumer.accept(new BucketHits(rs.getString("app"), rs.getString("uri"),
+                    rs.getTimestamp("time_stamp").toLocalDateTime(), rs.getLong("hits")));
+        }, Timestamp.valueOf(from));
+    }
+
+    public Optional<LocalDateTime> getFirstBefore(LocalDateTime time) {
+        Timestamp first = jdbcTemplate.queryForObject(SELECT_FIRST_BEFORE, Timestamp.class, Timestamp.valueOf(time));
+        return Optional.ofNullable(first).map(Timestamp::toLocalDateTime);
+    }
+
+    public int deleteBetween(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.update(DELETE_BETWEEN, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+}
@@ -0,0 +1,55 @@
+package ru.practicum.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.server.model.TimeRange;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class StatsPartitionRepository {
+    private static final String PARTITION_PREFIX = "hits_";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String SELECT_PARTITIONS = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = 'hits'";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<TimeRange> getPartitions() {
+        List<TimeRange> partitions = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class)) {
+            String[] bounds = name.substring(PARTITION_PREFIX.length()).split("_");
+            if (bounds.length == 2 && bounds[0].matches("\\d{8}") && bounds[1].matches("\\d{8}")) {
+                partitions.add(new TimeRange(parse(bounds[0]), parse(bounds[1])));
+            }
+        }
+        return partitions;
+    }
+
+    public void create(TimeRange range) {
+        jdbcTemplate.execute(String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF hits " +
+                        "FOR VALUES FROM ('%s') TO ('%s')",
+                name(range), range.start().format(BOUND_FORMAT), range.end().format(BOUND_FORMAT)));
+    }
+
+    public void drop(TimeRange range) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + name(range));
+    }
+
+    private String name(TimeRange range) {
+        return PARTITION_PREFIX + range.start().format(NAME_FORMAT) + "_" + range.end().format(NAME_FORMAT);
+    }
+
+    private LocalDateTime parse(String date) {
+        return LocalDate.parse(date, NAME_FORMAT).atStartOfDay();
+    }
+}
@@ -1,41 +1,231 @@
 package ru.practicum.server.repository;
 
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.model.BucketHits;
+import ru.practicum.server.model.SeriesStep;
 import ru.practicum.server.model.Stats;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
-public interface StatsRepository extends JpaRepository<Stats, Long> {
-    @Query("SELECT new ru.practicum.dto.ViewStatsDto(st.app, st.uri, COUNT(DISTINCT st.ip)) " +
-            "FROM Stats AS st " +
-            "WHERE st.timestamp BETWEEN :start AND :end " +
-            "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(DISTINCT st.ip) DESC")
-    List<ViewStatsDto> getAllUniqueStats(LocalDateTime start, LocalDateTime end);
-
-    @Query("SELECT new ru.practicum.dto.ViewStatsDto(st.app, st.uri, COUNT(st.ip)) " +
-            "FROM Stats AS st " +
-            "WHERE st.timestamp BETWEEN :start AND :end " +
-            "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(st.ip) DESC")
-    List<ViewStatsDto> getAllStats(LocalDateTime start, LocalDateTime end);
-
-    @Query("SELECT new ru.practicum.dto.ViewStatsDto(st.app, st.uri, COUNT(DISTINCT st.ip)) " +
-            "FROM Stats AS st " +
-            "WHERE st.timestamp BETWEEN :start AND :end " +
-            "AND st.uri IN :uris " +
-            "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(DISTINCT st.ip) DESC")
-    List<ViewStatsDto> getUniqueStatsByUris(LocalDateTime start, LocalDateTime end, List<String> uris);
-
-    @Query("SELECT new ru.practicum.dto.ViewStatsDto(st.app, st.uri, COUNT(st.ip)) " +
-            "FROM Stats AS st " +
-            "WHERE st.timestamp BETWEEN :start AND :end " +
-            "AND st.uri IN :uris " +
-            "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(st.ip) DESC")
-    List<ViewStatsDto> getStatsByUris(LocalDateTime start, LocalDateTime end, List<String> uris);
+@Repository
+public class StatsRepository {
+    private static final String HITS = "COUNT(*)";
+    private static final String UNIQUE_HITS = "COUNT(DISTINCT ip)";
+    private static final String BETWEEN = "time_stamp BETWEEN :start AND :end ";
+    private static final String EDGES = "((time_stamp >= :headStart AND time_stamp < :headEnd) " +
+            "OR (time_stamp >= :tailStart AND time_stamp <= :tailEnd)) ";
+    private static final String BY_URIS = "AND uri_id IN (SELECT id FROM uris WHERE %s) ";
+    private static final String SELECT_STATS = "SELECT a.app, u.uri, h.hits " +
+            "FROM (SELECT app_id, uri_id, %s AS hits " +
+            "FROM hits " +
+            "WHERE %s%s" +
+            "GROUP BY app_id, uri_id) AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id ";
+    private static final String SELECT_ROLLED_UP_STATS = "SELECT t.app, t.uri, SUM(t.hits) AS hits " +
+            "FROM (SELECT app, uri, hits " +
+            "FROM hits_hourly " +
+            "WHERE hour_start >= :headEnd AND hour_start < :tailStart %s" +
+            "UNION ALL " +
+            SELECT_STATS.formatted(HITS, EDGES, "%s") + ") AS t " +
+            "GROUP BY t.app, t.uri ";
+    private static final String ROLLUP_BY_URIS = "AND %s ";
+    private static final String ORDER_BY_HITS = "ORDER BY hits DESC";
+    private static final String LIMIT = " LIMIT :limit";
+    private static final String SELECT_VISITORS = "SELECT a.app, u.uri, h.ip " +
+            "FROM (SELECT DISTINCT app_id, uri_id, ip " +
+            "FROM hits " +
+            "WHERE %s%s) AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id";
+    private static final String SELECT_HITS = "SELECT a.app, u.uri, h.ip, h.time_stamp " +
+            "FROM hits AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id " +
+            "WHERE h.time_stamp >= :start AND h.time_stamp < :end " +
+            "ORDER BY h.time_stamp";
+    private static final String SELECT_ORDERED_VISITORS = "SELECT a.app, u.uri, h.ip " +
+            "FROM (SELECT DISTINCT app_id, uri_id, ip " +
+            "FROM hits " +
+            "WHERE time_stamp >= :start AND time_stamp < :end) AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id " +
+            "ORDER BY h.app_id, h.uri_id";
+
+    private static final String SELECT_SERIES = "SELECT a.app, u.uri, h.bucket, h.hits " +
+            "FROM (SELECT app_id, uri_id, DATE_TRUNC('%1$s', time_stamp) AS bucket, %2$s AS hits " +
+            "FROM hits " +
+            "WHERE %3$s%4$s" +
+            "GROUP BY app_id, uri_id, DATE_TRUNC('%1$s', time_stamp)) AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate streamingTemplate;
+
+    public StatsRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                           @Value("${stats.stream.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getJdbcTemplate().getDataSource());
+        streaming.setFetchSize(fetchSize);
+        this.streamingTemplate = new NamedParameterJdbcTemplate(streaming);
+    }
+
+    public List<ViewStatsDto> getAllUniqueStats(LocalDateTime start, LocalDateTime end) {
+        return stats(UNIQUE_HITS, BETWEEN, between(start, end), null);
+    }
+
+    public List<ViewStatsDto> getAllStats(LocalDateTime start, LocalDateTime end) {
+        return stats(HITS, BETWEEN, between(start, end), null);
+    }
+
+    public List<ViewStatsDto> getUniqueStatsByUris(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return stats(UNIQUE_HITS, BETWEEN, between(start, end), uris);
+    }
+
+    public List<ViewStatsDto> getStatsByUris(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return stats(HITS, BETWEEN, between(start, end), uris);
+    }
+
+    public List<ViewStatsDto> getEdgeStats(LocalDateTime headStart, LocalDateTime headEnd,
+                                           LocalDateTime tailStart, LocalDateTime tailEnd) {
+        return stats(HITS, EDGES, edges(headStart, headEnd, tailStart, tailEnd), null);
+    }
+
+    public List<ViewStatsDto> getEdgeStatsByUris(LocalDateTime headStart, LocalDateTime headEnd,
+                                                 LocalDateTime tailStart, LocalDateTime tailEnd, List<String> uris) {
+        return stats(HITS, EDGES, edges(headStart, headEnd, tailStart, tailEnd), uris);
+    }
+
+    public List<Stats> getEdgeVisitors(LocalDateTime headStart, LocalDateTime headEnd,
+                                       LocalDateTime tailStart, LocalDateTime tailEnd) {
+        return visitors(edges(headStart, headEnd, tailStart, tailEnd), null);
+    }
+
+    public List<Stats> getEdgeVisitorsByUris(LocalDateTime headStart, LocalDateTime headEnd,
+                                             LocalDateTime tailStart, LocalDateTime tailEnd, List<String> uris) {
+        return visitors(edges(headStart, headEnd, tailStart, tailEnd), uris);
+    }
+
+    // rows are pulled from a cursor, so the transaction keeps PostgreSQL from fetching the whole result at once
+    @Transactional(readOnly = true)
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique, Integer limit,
+                            Consumer<ViewStatsDto> consumer) {
+        MapSqlParameterSource params = between(start, end);
+        String sql = String.format(SELECT_STATS, unique ? UNIQUE_HITS : HITS, BETWEEN, byUris(params, uris));
+        stream(sql, params, limit, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamRolledUpStats(LocalDateTime headStart, LocalDateTime headEnd,
+                                    LocalDateTime tailStart, LocalDateTime tailEnd, List<String> uris, Integer limit,
+                                    Consumer<ViewStatsDto> consumer) {
+        MapSqlParameterSource params = edges(headStart, headEnd, tailStart, tailEnd);
+        String byUris = byUris(params, uris);
+        String rollupByUris = byUris.isEmpty()
+                ? ""
+                : ROLLUP_BY_URIS.formatted(UriPatterns.condition("uri", uris, params));
+        String sql = String.format(SELECT_ROLLED_UP_STATS, rollupByUris, byUris);
+        stream(sql, params, limit, consumer);
+    }
+
+    // distinct visitors in [start, end), the visitors of each app and uri one after another
+    @Transactional(readOnly = true)
+    public void streamVisitors(LocalDateTime start, LocalDateTime end, Consumer<Stats> consumer) {
+        streamingTemplate.query(SELECT_ORDERED_VISITORS, between(start, end), rs -> {
+            consumer.accept(Stats.builder()
+                    .app(rs.getString("app"))
+                    .uri(rs.getString("uri"))
+                    .ip(rs.getBytes("ip"))
+                    .build());
+        });
+    }
+
+    // raw hits in [start, end) in time order
+    @Transactional(readOnly = true)
+    public void streamHits(LocalDateTime start, LocalDateTime end, Consumer<Stats> consumer) {
+        streamingTemplate.query(SELECT_HITS, between(start, end), rs -> {
+            consumer.accept(Stats.builder()
+                    .app(rs.getString("app"))
+                    .uri(rs.getString("uri"))
+                    .ip(rs.getBytes("ip"))
+                    .timestamp(rs.getTimestamp("time_stamp").toLocalDateTime())
+                    .build());
+        });
+    }
+
+    public List<BucketHits> getSeries(SeriesStep step, LocalDateTime start, LocalDateTime end, List<String> uris,
+                                      boolean unique) {
+        return series(step, unique ? UNIQUE_HITS : HITS, BETWEEN, between(start, end), uris);
+    }
+
+    public List<BucketHits> getEdgeSeries(SeriesStep step, LocalDateTime headStart, LocalDateTime headEnd,
+                                          LocalDateTime tailStart, LocalDateTime tailEnd, List<String> uris) {
+        return series(step, HITS, EDGES, edges(headStart, headEnd, tailStart, tailEnd), uris);
+    }
+
+    private List<BucketHits> series(SeriesStep step, String count, String where, MapSqlParameterSource params,
+                                    List<String> uris) {
+        String sql = String.format(SELECT_SERIES, step.getField(), count, where, byUris(params, uris));
+        return jdbcTemplate.query(sql, params, (rs, rowNum) ->
+                new BucketHits(rs.getString("app"), rs.getString("uri"),
+                        rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+
+    private List<ViewStatsDto> stats(String count, String where, MapSqlParameterSource params, List<String> uris) {
+        String sql = String.format(SELECT_STATS, count, where, byUris(params, uris)) + ORDER_BY_HITS;
+        return jdbcTemplate.query(sql, params, (rs, rowNum) ->
+                new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    private void stream(String sql, MapSqlParameterSource params, Integer limit, Consumer<ViewStatsDto> consumer) {
+        sql += ORDER_BY_HITS;
+        if (limit != null) {
+            sql += LIMIT;
+            params.addValue("limit", limit);
+        }
+        streamingTemplate.query(sql, params, rs -> {
+            consumer.accept(new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+        });
+    }
+
+    private List<Stats> visitors(MapSqlParameterSource params, List<String> uris) {
+        String sql = String.format(SELECT_VISITORS, EDGES, byUris(params, uris));
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> Stats.builder()
+                .app(rs.getString("app"))
+                .uri(rs.getString("uri"))
+                .ip(rs.getBytes("ip"))
+                .build());
+    }
+
+    private String byUris(MapSqlParameterSource params, List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return "";
+        }
+        return BY_URIS.formatted(UriPatterns.condition("uri", uris, params));
+    }
+
+    private MapSqlParameterSource between(LocalDateTime start, LocalDateTime end) {
+        return new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+    }
+
+    private MapSqlParameterSource edges(LocalDateTime headStart, LocalDateTime headEnd,
+                                        LocalDateTime tailStart, LocalDateTime tailEnd) {
+        return new MapSqlParameterSource()
+                .addValue("headStart", Timestamp.valueOf(headStart))
+                .addValue("headEnd", Timestamp.valueOf(headEnd))
+                .addValue("tailStart", Timestamp.valueOf(tailStart))
+                .addValue("tailEnd", Timestamp.valueOf(tailEnd));
+    }
 }
@@ -0,0 +1,100 @@
+package ru.practicum.server.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.model.BucketHits;
+import ru.practicum.server.model.SeriesStep;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@Repository
+public class StatsRollupRepository {
+    private static final String UPSERT_POSTGRES = "INSERT INTO hits_hourly (app, uri, hour_start, hits) " +
+            "VALUES (:app, :uri, :hourStart, :hits) " +
+            "ON CONFLICT (uri, hour_start, app) DO UPDATE SET hits = hits_hourly.hits + EXCLUDED.hits";
+    private static final String UPSERT_STANDARD = "MERGE INTO hits_hourly AS h " +
+            "USING (VALUES (CAST(:app AS VARCHAR(64)), CAST(:uri AS VARCHAR(256)), " +
+            "CAST(:hourStart AS TIMESTAMP), CAST(:hits AS BIGINT))) AS v (app, uri, hour_start, hits) " +
+            "ON h.uri = v.uri AND h.hour_start = v.hour_start AND h.app = v.app " +
+            "WHEN MATCHED THEN UPDATE SET hits = h.hits + v.hits " +
+            "WHEN NOT MATCHED THEN INSERT (app, uri, hour_start, hits) VALUES (v.app, v.uri, v.hour_start, v.hits)";
+    private static final String SELECT_STATS = "SELECT app, uri, SUM(hits) AS hits " +
+            "FROM hits_hourly " +
+            "WHERE hour_start >= :from AND hour_start < :to ";
+    private static final String SELECT_HOURS = "SELECT app, uri, hour_start, hits " +
+            "FROM hits_hourly " +
+            "WHERE hour_start >= :from AND hour_start < :to";
+    private static final String SELECT_FIRST_HOUR = "SELECT MIN(hour_start) FROM hits_hourly";
+    private static final String BY_URIS = "AND %s ";
+    private static final String GROUP_BY = "GROUP BY app, uri";
+    private static final String SELECT_SERIES = "SELECT app, uri, DATE_TRUNC('%1$s', hour_start) AS bucket, " +
+            "SUM(hits) AS hits " +
+            "FROM hits_hourly " +
+            "WHERE hour_start >= :from AND hour_start < :to %2$s" +
+            "GROUP BY app, uri, DATE_TRUNC('%1$s', hour_start)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String upsert;
+
+    public StatsRollupRepository(NamedParameterJdbcTemplate jdbcTemplate, SqlDialect dialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.upsert = dialect.isPostgres() ? UPSERT_POSTGRES : UPSERT_STANDARD;
+    }
+
+    public void increment(List<BucketHits> rollups) {
+        MapSqlParameterSource[] batch = rollups.stream()
+                .map(rollup -> new MapSqlParameterSource()
+                        .addValue("app", rollup.app())
+                        .addValue("uri", rollup.uri())
+                        .addValue("hourStart", Timestamp.valueOf(rollup.bucketStart()))
+                        .addValue("hits", rollup.hits()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(upsert, batch);
+    }
+
+    public void streamHours(LocalDateTime from, LocalDateTime to, Consumer<BucketHits> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        jdbcTemplate.query(SELECT_HOURS, params, rs -> {
+            consumer.accept(new BucketHits(rs.getString("app"), rs.getString("uri"),
+                    rs.getTimestamp("hour_start").toLocalDateTime(), rs.getLong("hits")));
+        });
+    }
+
+    public Optional<LocalDateTime> getFirstHour() {
+        Timestamp first = jdbcTemplate.getJdbcTemplate().queryForObject(SELECT_FIRST_HOUR, Timestamp.class);
+        return Optional.ofNullable(first).map(Timestamp::toLocalDateTime);
+    }
+
+    public List<ViewStatsDto> getStats(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = SELECT_STATS;
+        if (uris != null && !uris.isEmpty()) {
+            sql += BY_URIS.formatted(UriPatterns.condition("uri", uris, params));
+        }
+        return jdbcTemplate.query(sql + GROUP_BY, params, (rs, rowNum) ->
+                new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    public List<BucketHits> getSeries(SeriesStep step, LocalDateTime from, LocalDateTime to, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String byUris = "";
+        if (uris != null && !uris.isEmpty()) {
+            byUris = BY_URIS.formatted(UriPatterns.condition("uri", uris, params));
+        }
+        return jdbcTemplate.query(String.format(SELECT_SERIES, step.getField(), byUris), params, (rs, rowNum) ->
+                new BucketHits(rs.getString("app"), rs.getString("uri"),
+                        rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+}
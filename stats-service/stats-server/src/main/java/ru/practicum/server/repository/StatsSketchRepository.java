@@ -0,0 +1,148 @@
+package ru.practicum.server.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.server.model.AppUri;
+import ru.practicum.server.model.BucketKey;
+import ru.practicum.dto.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+@Repository
+public class StatsSketchRepository {
+    private static final byte[] EMPTY_SKETCH = new HyperLogLog().toBytes();
+    private static final String INSERT_IF_ABSENT_POSTGRES = "INSERT INTO hit_sketches (app, uri, day_start, sketch) " +
+            "VALUES (:app, :uri, :dayStart, :sketch) " +
+            "ON CONFLICT (uri, day_start, app) DO NOTHING";
+    private static final String INSERT_IF_ABSENT_STANDARD = "MERGE INTO hit_sketches AS s " +
+            "USING (VALUES (CAST(:app AS VARCHAR(64)), CAST(:uri AS VARCHAR(256)), " +
+            "CAST(:dayStart AS TIMESTAMP))) AS v (app, uri, day_start) " +
+            "ON s.uri = v.uri AND s.day_start = v.day_start AND s.app = v.app " +
+            "WHEN NOT MATCHED THEN INSERT (app, uri, day_start, sketch) VALUES (v.app, v.uri, v.day_start, :sketch)";
+    private static final String SELECT_FOR_UPDATE = "SELECT sketch FROM hit_sketches " +
+            "WHERE uri = :uri AND day_start = :dayStart AND app = :app FOR UPDATE";
+    private static final String UPDATE = "UPDATE hit_sketches SET sketch = :sketch " +
+            "WHERE uri = :uri AND day_start = :dayStart AND app = :app";
+    private static final String DELETE_DAY = "DELETE FROM hit_sketches WHERE day_start = :dayStart";
+    private static final String INSERT = "INSERT INTO hit_sketches (app, uri, day_start, sketch) " +
+            "VALUES (:app, :uri, :dayStart, :sketch)";
+    private static final String SELECT_DAYS_AND_EDGES = "SELECT t.app, t.uri, t.sketch, t.ip " +
+            "FROM (SELECT app, uri, sketch, CAST(NULL AS BYTEA) AS ip " +
+            "FROM hit_sketches " +
+            "WHERE day_start >= :headEnd AND day_start < :tailStart %s" +
+            "UNION ALL " +
+            "SELECT a.app, u.uri, CAST(NULL AS BYTEA), h.ip " +
+            "FROM (SELECT DISTINCT app_id, uri_id, ip " +
+            "FROM hits " +
+            "WHERE ((time_stamp >= :headStart AND time_stamp < :headEnd) " +
+            "OR (time_stamp >= :tailStart AND time_stamp <= :tailEnd)) %s) AS h " +
+            "JOIN apps AS a ON a.id = h.app_id " +
+            "JOIN uris AS u ON u.id = h.uri_id) AS t " +
+            "ORDER BY t.app, t.uri";
+    private static final String BY_URIS = "AND %s ";
+    private static final String BY_URI_IDS = "AND uri_id IN (SELECT id FROM uris WHERE %s) ";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate streamingTemplate;
+    private final String insertIfAbsent;
+
+    public StatsSketchRepository(NamedParameterJdbcTemplate jdbcTemplate, SqlDialect dialect,
+                                 @Value("${stats.stream.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getJdbcTemplate().getDataSource());
+        streaming.setFetchSize(fetchSize);
+        this.streamingTemplate = new NamedParameterJdbcTemplate(streaming);
+        this.insertIfAbsent = dialect.isPostgres() ? INSERT_IF_ABSENT_POSTGRES : INSERT_IF_ABSENT_STANDARD;
+    }
+
+    public void merge(Map<BucketKey, HyperLogLog> sketches) {
+        MapSqlParameterSource[] keys = sketches.keySet().stream()
+                .map(key -> keyParams(key).addValue("sketch", EMPTY_SKETCH))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(insertIfAbsent, keys);
+
+        MapSqlParameterSource[] updates = new MapSqlParameterSource[keys.length];
+        int i = 0;
+        for (Map.Entry<BucketKey, HyperLogLog> entry : sketches.entrySet()) {
+            MapSqlParameterSource params = keyParams(entry.getKey());
+            byte[] stored = jdbcTemplate.queryForObject(SELECT_FOR_UPDATE, params, byte[].class);
+            HyperLogLog merged = HyperLogLog.fromBytes(stored);
+            merged.merge(entry.getValue());
+            updates[i++] = params.addValue("sketch", merged.toBytes());
+        }
+        jdbcTemplate.batchUpdate(UPDATE, updates);
+    }
+
+    public void deleteDay(LocalDateTime dayStart) {
+        jdbcTemplate.update(DELETE_DAY, new MapSqlParameterSource("dayStart", Timestamp.valueOf(dayStart)));
+    }
+
+    public void insert(LocalDateTime dayStart, Map<AppUri, HyperLogLog> sketches) {
+        MapSqlParameterSource[] rows = sketches.entrySet().stream()
+                .map(e -> keyParams(new BucketKey(e.getKey().app(), e.getKey().uri(), dayStart))
+                        .addValue("sketch", e.getValue().toBytes()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(INSERT, rows);
+    }
+
+    // per app and uri, the union of the daily sketches in [fullFrom, fullTo) and the raw visitors
+    // of [start, fullFrom) and [fullTo, end]; rows come ordered by app and uri, so one sketch is held at a time
+    @Transactional(readOnly = true)
+    public void streamSketches(LocalDateTime start, LocalDateTime fullFrom, LocalDateTime fullTo, LocalDateTime end,
+                               List<String> uris, BiConsumer<AppUri, HyperLogLog> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("headStart", Timestamp.valueOf(start))
+                .addValue("headEnd", Timestamp.valueOf(fullFrom))
+                .addValue("tailStart", Timestamp.valueOf(fullTo))
+                .addValue("tailEnd", Timestamp.valueOf(end));
+        String byUris = "";
+        String byUriIds = "";
+        if (uris != null && !uris.isEmpty()) {
+            String condition = UriPatterns.condition("uri", uris, params);
+            byUris = BY_URIS.formatted(condition);
+            byUriIds = BY_URI_IDS.formatted(condition);
+        }
+
+        streamingTemplate.query(SELECT_DAYS_AND_EDGES.formatted(byUris, byUriIds), params,
+                (ResultSetExtractor<Void>) rs -> {
+                    AppUri key = null;
+                    HyperLogLog sketch = null;
+                    while (rs.next()) {
+                        AppUri rowKey = new AppUri(rs.getString("app"), rs.getString("uri"));
+                        if (!rowKey.equals(key)) {
+                            if (key != null) {
+                                consumer.accept(key, sketch);
+                            }
+                            key = rowKey;
+                            sketch = new HyperLogLog();
+                        }
+                        byte[] day = rs.getBytes("sketch");
+                        if (day != null) {
+                            sketch.merge(HyperLogLog.fromBytes(day));
+                        } else {
+                            sketch.offer(rs.getBytes("ip"));
+                        }
+                    }
+                    if (key != null) {
+                        consumer.accept(key, sketch);
+                    }
+                    return null;
+                });
+    }
+
+    private MapSqlParameterSource keyParams(BucketKey key) {
+        return new MapSqlParameterSource()
+                .addValue("app", key.app())
+                .addValue("uri", key.uri())
+                .addValue("dayStart", Timestamp.valueOf(key.bucketStart()));
+    }
+}
@@ -0,0 +1,64 @@
+package ru.practicum.server.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uri filters of stats queries, where a uri ending in {@code *} stands for every uri with that prefix.
+ * Prefixes become {@code LIKE 'prefix%'} conditions, which PostgreSQL answers from the
+ * {@code text_pattern_ops} index on {@code uris}.
+ */
+public final class UriPatterns {
+    public static final String WILDCARD = "*";
+    private static final char ESCAPE = '\\';
+
+    private UriPatterns() {
+    }
+
+    public static boolean isPattern(String uri) {
+        return uri.endsWith(WILDCARD);
+    }
+
+    public static boolean hasPatterns(List<String> uris) {
+        return uris != null && uris.stream().anyMatch(UriPatterns::isPattern);
+    }
+
+    public static String prefix(String pattern) {
+        return pattern.substring(0, pattern.length() - WILDCARD.length());
+    }
+
+    /**
+     * Condition on column matching the exact uris and the patterns among uris, with its parameters added to params.
+     */
+    static String condition(String column, List<String> uris, MapSqlParameterSource params) {
+        List<String> exact = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        for (String uri : uris) {
+            if (!isPattern(uri)) {
+                exact.add(uri);
+                continue;
+            }
+            String name = "uriPrefix" + conditions.size();
+            params.addValue(name, escape(prefix(uri)) + "%");
+            conditions.add(column + " LIKE :" + name + " ESCAPE '" + ESCAPE + "'");
+        }
+        if (!exact.isEmpty()) {
+            params.addValue("uris", exact);
+            conditions.add(column + " IN (:uris)");
+        }
+        return "(" + String.join(" OR ", conditions) + ")";
+    }
+
+    private static String escape(String prefix) {
+        StringBuilder escaped = new StringBuilder(prefix.length());
+        for (char c : prefix.toCharArray()) {
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                escaped.append(ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
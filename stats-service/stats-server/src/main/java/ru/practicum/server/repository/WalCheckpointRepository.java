@@ -0,0 +1,30 @@
+package ru.practicum.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.server.wal.WalPosition;
+
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class WalCheckpointRepository {
+    private static final int ID = 1;
+    private static final String SELECT = "SELECT segment, position FROM wal_checkpoint WHERE id = ?";
+    private static final String UPDATE = "UPDATE wal_checkpoint SET segment = ?, position = ? WHERE id = ?";
+    private static final String INSERT = "INSERT INTO wal_checkpoint (id, segment, position) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Optional<WalPosition> find() {
+        return jdbcTemplate.query(SELECT, (rs, rowNum) ->
+                new WalPosition(rs.getLong("segment"), rs.getInt("position")), ID).stream().findFirst();
+    }
+
+    public void save(WalPosition position) {
+        if (jdbcTemplate.update(UPDATE, position.segment(), position.offset(), ID) == 0) {
+            jdbcTemplate.update(INSERT, ID, position.segment(), position.offset());
+        }
+    }
+}
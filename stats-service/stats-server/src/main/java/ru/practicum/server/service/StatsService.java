@@ -2,15 +2,36 @@ package ru.practicum.server.service;
 
 
 import ru.practicum.dto.HitEndpointDto;
+import ru.practicum.dto.ViewSeriesDto;
+import ru.practicum.dto.ViewSketchDto;
+import ru.practicum.dto.ViewVisitorsDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.counter.TopWindow;
+import ru.practicum.server.model.SeriesStep;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsService {
 
     void postHit(HitEndpointDto hit);
 
-    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+    void postHits(List<HitEndpointDto> hits);
+
+    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                Boolean approximate, Integer limit);
+
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique, Boolean approximate,
+                     Integer limit, Consumer<ViewStatsDto> consumer);
+
+    List<ViewSeriesDto> getSeries(LocalDateTime start, LocalDateTime end, SeriesStep step, List<String> uris,
+                                  Boolean unique);
+
+    List<ViewSketchDto> getSketches(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    List<ViewVisitorsDto> getVisitors(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    List<ViewStatsDto> getTopStats(TopWindow window, Integer k, String app, String prefix);
 }
 
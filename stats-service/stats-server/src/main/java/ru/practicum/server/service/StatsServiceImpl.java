@@ -1,57 +1,480 @@
 package ru.practicum.server.service;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.dto.HitEndpointDto;
+import ru.practicum.dto.ViewSeriesDto;
+import ru.practicum.dto.ViewSketchDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.dto.ViewVisitorsDto;
+import ru.practicum.server.cache.StatsQuery;
+import ru.practicum.server.cache.StatsResultCache;
+import ru.practicum.server.counter.HitCounterEngine;
+import ru.practicum.server.counter.TopHitsTracker;
+import ru.practicum.server.counter.TopWindow;
 import ru.practicum.server.exception.ValidationException;
+import ru.practicum.server.ingest.HitIngestor;
 import ru.practicum.server.mapper.StatsMapper;
+import ru.practicum.server.model.AppUri;
+import ru.practicum.server.model.BucketHits;
+import ru.practicum.server.model.SeriesStep;
 import ru.practicum.server.model.Stats;
+import ru.practicum.server.model.TopStats;
+import ru.practicum.server.repository.StatsDictionary;
 import ru.practicum.server.repository.StatsRepository;
+import ru.practicum.server.repository.StatsRollupRepository;
+import ru.practicum.server.repository.StatsSketchRepository;
+import ru.practicum.server.repository.StatsVisitorRepository;
+import ru.practicum.server.repository.UriPatterns;
+import ru.practicum.dto.HyperLogLog;
+import ru.practicum.dto.VisitorBitmap;
+import ru.practicum.server.storage.HitStorageMaintainer;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class StatsServiceImpl implements StatsService {
-
     private final StatsRepository statsRepository;
+    private final StatsRollupRepository statsRollupRepository;
+    private final StatsSketchRepository statsSketchRepository;
+    private final StatsVisitorRepository statsVisitorRepository;
+    private final HitCounterEngine hitCounterEngine;
+    private final TopHitsTracker topHitsTracker;
+    private final StatsResultCache statsResultCache;
+    private final StatsDictionary statsDictionary;
+    private final HitStorageMaintainer hitStorageMaintainer;
+    private final HitIngestor hitIngestor;
+    private final int maxExpandedUris;
+    private final int maxSeriesBuckets;
+    private final long maxSeriesCells;
+
+    public StatsServiceImpl(StatsRepository statsRepository,
+                            StatsRollupRepository statsRollupRepository,
+                            StatsSketchRepository statsSketchRepository,
+                            StatsVisitorRepository statsVisitorRepository,
+                            HitCounterEngine hitCounterEngine,
+                            TopHitsTracker topHitsTracker,
+                            StatsResultCache statsResultCache,
+                            StatsDictionary statsDictionary,
+                            HitStorageMaintainer hitStorageMaintainer,
+                            HitIngestor hitIngestor,
+                            @Value("${stats.uris.max-expanded:10000}") int maxExpandedUris,
+                            @Value("${stats.series.max-buckets:10000}") int maxSeriesBuckets,
+                            @Value("${stats.series.max-cells:1000000}") long maxSeriesCells) {
+        this.statsRepository = statsRepository;
+        this.statsRollupRepository = statsRollupRepository;
+        this.statsSketchRepository = statsSketchRepository;
+        this.statsVisitorRepository = statsVisitorRepository;
+        this.hitCounterEngine = hitCounterEngine;
+        this.topHitsTracker = topHitsTracker;
+        this.statsResultCache = statsResultCache;
+        this.statsDictionary = statsDictionary;
+        this.hitStorageMaintainer = hitStorageMaintainer;
+        this.hitIngestor = hitIngestor;
+        this.maxExpandedUris = maxExpandedUris;
+        this.maxSeriesBuckets = maxSeriesBuckets;
+        this.maxSeriesCells = maxSeriesCells;
+    }
 
-    @Transactional
     @Override
     public void postHit(HitEndpointDto hit) {
         Stats stats = StatsMapper.fromDto(hit);
-        log.info("Create new hit: {}", stats);
-        statsRepository.save(stats);
-        log.info("Hit was create");
+        log.debug("Create new hit: app {}, uri {}", stats.getApp(), stats.getUri());
+        hitIngestor.ingest(stats);
     }
 
+    @Override
+    public void postHits(List<HitEndpointDto> hits) {
+        log.debug("Create {} hits", hits.size());
+        if (!hits.isEmpty()) {
+            hitIngestor.ingestAll(hits.stream()
+                    .map(StatsMapper::fromDto)
+                    .toList());
+        }
+    }
 
     @Override
-    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        if (start.isAfter(end)) {
-            throw new ValidationException(
-                    String.format("Unexpected time interval: start %s; end %s", start, end));
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                       Boolean approximate, Integer limit) {
+        checkInterval(start, end);
+        log.info("Get stats by start [{}],\n end [{}],\n uris [{}],\n unique [{}],\n approximate [{}],\n limit [{}]",
+                start, end, uris, unique, approximate, limit);
+        List<String> patterns = uris;
+        uris = expandUris(uris);
+        if (uris == null) {
+            patterns = null;
+        } else if (uris.isEmpty()) {
+            return List.of();
+        }
+        if (!unique && !UriPatterns.hasPatterns(uris)) {
+            Optional<List<ViewStatsDto>> counted = hitCounterEngine.getStats(start, end, uris, limit);
+            if (counted.isPresent()) {
+                return counted.get();
+            }
         }
+        return limit(statsResultCache.isEnabled()
+                ? getCachedStats(start, end, patterns, uris, unique, approximate)
+                : computeStats(start, end, uris, unique, approximate), limit);
+    }
 
-        log.info("Get stats by start [{}],\n end [{}],\n uris [{}],\n unique [{}]", start, end, uris, unique);
-        if (uris == null || uris.isEmpty()) {
-            if (unique) {
-                return statsRepository.getAllUniqueStats(start, end);
-            } else {
-                return statsRepository.getAllStats(start, end);
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                            Boolean approximate, Integer limit, Consumer<ViewStatsDto> consumer) {
+        checkInterval(start, end);
+        log.info("Stream stats by start [{}],\n end [{}],\n uris [{}],\n unique [{}],\n approximate [{}],\n limit [{}]",
+                start, end, uris, unique, approximate, limit);
+        uris = expandUris(uris);
+        if (uris != null && uris.isEmpty()) {
+            return;
+        }
+        if (unique && fullDaysFrom(start).isBefore(fullDaysTo(end))) {
+            List<ViewStatsDto> top = approximate
+                    ? getApproximateUniqueStats(start, end, uris, limit)
+                    : getExactUniqueStats(start, end, uris, limit);
+            top.forEach(consumer);
+            return;
+        }
+        if (unique) {
+            statsRepository.streamStats(start, end, uris, true, limit, consumer);
+            return;
+        }
+
+        Optional<List<ViewStatsDto>> counted = UriPatterns.hasPatterns(uris)
+                ? Optional.empty()
+                : hitCounterEngine.getStats(start, end, uris, limit);
+        if (counted.isPresent()) {
+            counted.get().forEach(consumer);
+            return;
+        }
+        LocalDateTime fullFrom = fullHoursFrom(start);
+        LocalDateTime fullTo = fullHoursTo(end);
+        if (fullFrom.isBefore(fullTo)) {
+            statsRepository.streamRolledUpStats(start, fullFrom, fullTo, end, uris, limit, consumer);
+        } else {
+            statsRepository.streamStats(start, end, uris, false, limit, consumer);
+        }
+    }
+
+    @Override
+    public List<ViewSeriesDto> getSeries(LocalDateTime start, LocalDateTime end, SeriesStep step, List<String> uris,
+                                         Boolean unique) {
+        checkInterval(start, end);
+        log.info("Get {} series by start [{}],\n end [{}],\n uris [{}],\n unique [{}]", step, start, end, uris, unique);
+        LocalDateTime first = start.truncatedTo(step.getUnit());
+        long buckets = step.getUnit().between(first, end.truncatedTo(step.getUnit())) + 1;
+        if (buckets > maxSeriesBuckets) {
+            throw new ValidationException(String.format("Series of %d %s buckets is longer than %d",
+                    buckets, step, maxSeriesBuckets));
+        }
+        uris = expandUris(uris);
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+
+        List<BucketHits> counts;
+        if (unique || step == SeriesStep.MINUTE) {
+            // only hourly and daily aggregates are left before the retention horizon
+            if (isBeyondRetention(start)) {
+                throw new ValidationException(String.format("%s series are not kept before %s",
+                        unique ? "Unique" : "Per minute", hitStorageMaintainer.getRetentionHorizon().orElseThrow()));
             }
+            counts = statsRepository.getSeries(step, start, end, uris, unique);
         } else {
-            if (unique) {
-                return statsRepository.getUniqueStatsByUris(start, end, uris);
+            LocalDateTime fullFrom = fullHoursFrom(start);
+            LocalDateTime fullTo = fullHoursTo(end);
+            if (fullFrom.isBefore(fullTo)) {
+                counts = new ArrayList<>(statsRollupRepository.getSeries(step, fullFrom, fullTo, uris));
+                counts.addAll(statsRepository.getEdgeSeries(step, start, fullFrom, fullTo, end, uris));
             } else {
-                return statsRepository.getStatsByUris(start, end, uris);
+                counts = statsRepository.getSeries(step, start, end, uris, false);
+            }
+        }
+
+        // every series is dense, so without uris a long series could allocate a bucket for every uri ever hit
+        long maxSeries = Math.max(1, maxSeriesCells / buckets);
+        Map<AppUri, long[]> series = new HashMap<>();
+        for (BucketHits bucket : counts) {
+            AppUri key = new AppUri(bucket.app(), bucket.uri());
+            long[] hits = series.get(key);
+            if (hits == null) {
+                if (series.size() >= maxSeries) {
+                    throw new ValidationException(String.format("Series of %d %s buckets are limited to %d uris, " +
+                            "narrow the uris or the interval", buckets, step, maxSeries));
+                }
+                hits = new long[(int) buckets];
+                series.put(key, hits);
+            }
+            hits[(int) step.getUnit().between(first, bucket.bucketStart())] += bucket.hits();
+        }
+        return series.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<AppUri, long[]> e) -> Arrays.stream(e.getValue()).sum())
+                        .reversed())
+                .map(e -> new ViewSeriesDto(e.getKey().app(), e.getKey().uri(), first, step.name(), e.getValue()))
+                .toList();
+    }
+
+    @Override
+    public List<ViewSketchDto> getSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        checkInterval(start, end);
+        log.info("Get visitor sketches by start [{}],\n end [{}],\n uris [{}]", start, end, uris);
+        uris = expandUris(uris);
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+        List<ViewSketchDto> sketches = new ArrayList<>();
+        streamSketches(start, end, uris, (key, sketch) ->
+                sketches.add(new ViewSketchDto(key.app(), key.uri(), sketch.toBytes())));
+        return sketches;
+    }
+
+    @Override
+    public List<ViewVisitorsDto> getVisitors(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        checkInterval(start, end);
+        log.info("Get visitors by start [{}],\n end [{}],\n uris [{}]", start, end, uris);
+        uris = expandUris(uris);
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+        List<ViewVisitorsDto> visitors = new ArrayList<>();
+        streamVisitors(start, end, uris, (key, bitmap) ->
+                visitors.add(new ViewVisitorsDto(key.app(), key.uri(), bitmap.toBytes())));
+        return visitors;
+    }
+
+    @Override
+    public List<ViewStatsDto> getTopStats(TopWindow window, Integer k, String app, String prefix) {
+        log.info("Get top {} stats for the last {}, app [{}], uri prefix [{}]", k, window, app, prefix);
+        return topHitsTracker.getTop(window, k, app, prefix);
+    }
+
+    // whole cache buckets come from the cache, the partial buckets at both ends are read every time;
+    // results are keyed on the requested patterns so hits on uris first seen later still patch them
+    private List<ViewStatsDto> getCachedStats(LocalDateTime start, LocalDateTime end, List<String> patterns,
+                                              List<String> uris, Boolean unique, Boolean approximate) {
+        boolean headDropped = isBeyondRetention(start);
+        boolean tailDropped = isBeyondRetention(end);
+        LocalDateTime from = headDropped ? statsResultCache.bucketStart(start) : statsResultCache.nextBucketStart(start);
+        LocalDateTime to = tailDropped ? statsResultCache.bucketEnd(end) : statsResultCache.bucketStart(end);
+        if (!from.isBefore(to)) {
+            return computeStats(start, end, uris, unique, approximate);
+        }
+        // raw hits before the retention horizon are gone and the head or tail is answered as a whole bucket
+        LocalDateTime headEnd = headDropped ? start : from;
+        LocalDateTime tailStart = tailDropped ? end : to;
+        StatsQuery query = StatsQuery.of(from, to, patterns, unique, approximate,
+                hitStorageMaintainer.getRetentionHorizon().orElse(null));
+        // stored timestamps have microsecond precision
+        LocalDateTime coreEnd = to.minus(1, ChronoUnit.MICROS);
+
+        if (unique) {
+            List<Stats> edgeVisitors = uris == null
+                    ? statsRepository.getEdgeVisitors(start, headEnd, tailStart, end)
+                    : statsRepository.getEdgeVisitorsByUris(start, headEnd, tailStart, end, uris);
+            if (!edgeVisitors.isEmpty()) {
+                return computeStats(start, end, uris, true, approximate);
+            }
+            return statsResultCache.get(query, () -> computeStats(from, coreEnd, uris, true, approximate));
+        }
+        List<ViewStatsDto> edges = uris == null
+                ? statsRepository.getEdgeStats(start, headEnd, tailStart, end)
+                : statsRepository.getEdgeStatsByUris(start, headEnd, tailStart, end, uris);
+        List<ViewStatsDto> cached = statsResultCache.get(query,
+                () -> computeStats(from, coreEnd, uris, false, approximate));
+        return edges.isEmpty() ? cached : merge(cached, edges);
+    }
+
+    private List<ViewStatsDto> computeStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                            Boolean unique, Boolean approximate) {
+        if (unique) {
+            return approximate
+                    ? getApproximateUniqueStats(start, end, uris, null)
+                    : getExactUniqueStats(start, end, uris, null);
+        }
+        return getRolledUpStats(start, end, uris);
+    }
+
+    // "/events/*" stands for every known uri starting with "/events/", an empty list means any uri;
+    // patterns matching more uris than fit in an IN list are left to the database as prefix conditions
+    private List<String> expandUris(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        if (!UriPatterns.hasPatterns(uris)) {
+            return uris;
+        }
+        Set<String> expanded = new LinkedHashSet<>();
+        for (String uri : uris) {
+            if (!UriPatterns.isPattern(uri)) {
+                expanded.add(uri);
+                continue;
+            }
+            String prefix = UriPatterns.prefix(uri);
+            if (prefix.isEmpty()) {
+                return null;
             }
+            expanded.addAll(statsDictionary.urisWithPrefix(prefix));
+            if (expanded.size() > maxExpandedUris) {
+                return uris.stream().distinct().toList();
+            }
+        }
+        return new ArrayList<>(expanded);
+    }
+
+    private void checkInterval(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end)) {
+            throw new ValidationException(
+                    String.format("Unexpected time interval: start %s; end %s", start, end));
+        }
+    }
+
+    private List<ViewStatsDto> limit(List<ViewStatsDto> stats, Integer limit) {
+        return limit == null || stats.size() <= limit ? stats : stats.subList(0, limit);
+    }
+
+    private List<ViewStatsDto> getRolledUpStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        LocalDateTime fullFrom = fullHoursFrom(start);
+        LocalDateTime fullTo = fullHoursTo(end);
+
+        if (!fullFrom.isBefore(fullTo)) {
+            return uris == null
+                    ? statsRepository.getAllStats(start, end)
+                    : statsRepository.getStatsByUris(start, end, uris);
+        }
+
+        List<ViewStatsDto> edges = uris == null
+                ? statsRepository.getEdgeStats(start, fullFrom, fullTo, end)
+                : statsRepository.getEdgeStatsByUris(start, fullFrom, fullTo, end, uris);
+        List<ViewStatsDto> hours = statsRollupRepository.getStats(fullFrom, fullTo, uris);
+        return merge(hours, edges);
+    }
+
+    private LocalDateTime fullHoursFrom(LocalDateTime start) {
+        LocalDateTime fullFrom = start.truncatedTo(ChronoUnit.HOURS);
+        if (fullFrom.isBefore(start) && !isBeyondRetention(start)) {
+            fullFrom = fullFrom.plusHours(1);
         }
+        return fullFrom;
+    }
+
+    private LocalDateTime fullHoursTo(LocalDateTime end) {
+        LocalDateTime fullTo = end.truncatedTo(ChronoUnit.HOURS);
+        if (isBeyondRetention(end)) {
+            fullTo = fullTo.plusHours(1);
+        }
+        return fullTo;
+    }
+
+    private List<ViewStatsDto> getApproximateUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                         Integer limit) {
+        if (!fullDaysFrom(start).isBefore(fullDaysTo(end))) {
+            return limit(uris == null
+                    ? statsRepository.getAllUniqueStats(start, end)
+                    : statsRepository.getUniqueStatsByUris(start, end, uris), limit);
+        }
+
+        TopStats top = new TopStats(limit);
+        streamSketches(start, end, uris, (key, sketch) ->
+                top.offer(new ViewStatsDto(key.app(), key.uri(), sketch.estimate())));
+        return top.toList();
     }
 
+    private List<ViewStatsDto> getExactUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                   Integer limit) {
+        if (!fullDaysFrom(start).isBefore(fullDaysTo(end))) {
+            return limit(uris == null
+                    ? statsRepository.getAllUniqueStats(start, end)
+                    : statsRepository.getUniqueStatsByUris(start, end, uris), limit);
+        }
+
+        TopStats top = new TopStats(limit);
+        streamVisitors(start, end, uris, (key, bitmap) ->
+                top.offer(new ViewStatsDto(key.app(), key.uri(), bitmap.cardinality())));
+        return top.toList();
+    }
+
+    // daily visitor bitmaps of the sealed whole days plus the raw visitors of the rest, one app and uri at a time
+    private void streamVisitors(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                BiConsumer<AppUri, VisitorBitmap> consumer) {
+        LocalDateTime fullFrom = fullDaysFrom(start);
+        LocalDateTime fullTo = fullDaysTo(end);
+        if (fullFrom.isBefore(fullTo)) {
+            statsVisitorRepository.streamVisitors(start, fullFrom, sealedDaysTo(fullFrom, fullTo), end, uris, consumer);
+        } else {
+            statsVisitorRepository.streamVisitors(start, start, start, end, uris, consumer);
+        }
+    }
+
+    // daily sketches of the sealed whole days plus the raw visitors of the rest, one app and uri at a time
+    private void streamSketches(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                BiConsumer<AppUri, HyperLogLog> consumer) {
+        LocalDateTime fullFrom = fullDaysFrom(start);
+        LocalDateTime fullTo = fullDaysTo(end);
+        if (fullFrom.isBefore(fullTo)) {
+            statsSketchRepository.streamSketches(start, fullFrom, sealedDaysTo(fullFrom, fullTo), end, uris, consumer);
+        } else {
+            statsSketchRepository.streamSketches(start, start, start, end, uris, consumer);
+        }
+    }
+
+    private LocalDateTime fullDaysFrom(LocalDateTime start) {
+        LocalDateTime fullFrom = start.truncatedTo(ChronoUnit.DAYS);
+        if (fullFrom.isBefore(start) && !isBeyondRetention(start)) {
+            fullFrom = fullFrom.plusDays(1);
+        }
+        return fullFrom;
+    }
+
+    private LocalDateTime fullDaysTo(LocalDateTime end) {
+        LocalDateTime fullTo = end.truncatedTo(ChronoUnit.DAYS);
+        if (isBeyondRetention(end)) {
+            fullTo = fullTo.plusDays(1);
+        }
+        return fullTo;
+    }
+
+    // days from the sealed one on have no daily aggregates yet, so they are read from raw hits with the tail
+    private LocalDateTime sealedDaysTo(LocalDateTime fullFrom, LocalDateTime fullTo) {
+        LocalDateTime sealedTo = hitStorageMaintainer.getSealedTo();
+        if (!fullTo.isAfter(sealedTo)) {
+            return fullTo;
+        }
+        return sealedTo.isAfter(fullFrom) ? sealedTo : fullFrom;
+    }
+
+    // raw hits before the retention horizon are gone, only hourly and daily aggregates are left
+    private boolean isBeyondRetention(LocalDateTime time) {
+        return hitStorageMaintainer.getRetentionHorizon()
+                .map(time::isBefore)
+                .orElse(false);
+    }
+
+    private List<ViewStatsDto> merge(List<ViewStatsDto> first, List<ViewStatsDto> second) {
+        Map<AppUri, Long> hits = new LinkedHashMap<>();
+        for (ViewStatsDto stats : first) {
+            hits.merge(new AppUri(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum);
+        }
+        for (ViewStatsDto stats : second) {
+            hits.merge(new AppUri(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum);
+        }
+
+        return hits.entrySet().stream()
+                .map(e -> new ViewStatsDto(e.getKey().app(), e.getKey().uri(), e.getValue()))
+                .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                .toList();
+    }
 }
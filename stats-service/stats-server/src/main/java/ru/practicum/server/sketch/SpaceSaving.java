@@ -0,0 +1,74 @@
+package ru.practicum.server.sketch;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Space-Saving heavy-hitter summary keeping at most {@code capacity} counters.
+ * A new key takes over the smallest counter, so every count is an overestimate by at most {@link #min()},
+ * and any key seen more than total / capacity times is guaranteed to be tracked.
+ */
+public class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final TreeSet<Entry<K>> byCount = new TreeSet<>(Comparator.<Entry<K>>comparingLong(e -> e.count)
+            .thenComparingLong(e -> e.order));
+    private long order;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(K key, long count) {
+        Entry<K> entry = entries.get(key);
+        if (entry == null) {
+            long base = 0;
+            if (entries.size() >= capacity) {
+                Entry<K> smallest = byCount.pollFirst();
+                entries.remove(smallest.key);
+                base = smallest.count;
+            }
+            entry = new Entry<>(key, base, order++);
+            entries.put(key, entry);
+        } else {
+            byCount.remove(entry);
+        }
+        entry.count += count;
+        byCount.add(entry);
+    }
+
+    // upper bound of the count of any key that isn't tracked
+    public long min() {
+        return entries.size() < capacity ? 0 : byCount.first().count;
+    }
+
+    public void forEach(ObjLongConsumer<K> consumer) {
+        for (Entry<K> entry : entries.values()) {
+            consumer.accept(entry.key, entry.count);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        byCount.clear();
+    }
+
+    private static final class Entry<K> {
+        private final K key;
+        private final long order;
+        private long count;
+
+        private Entry(K key, long count, long order) {
+            this.key = key;
+            this.count = count;
+            this.order = order;
+        }
+    }
+}
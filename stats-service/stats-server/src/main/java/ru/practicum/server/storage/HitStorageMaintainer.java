@@ -0,0 +1,238 @@
+package ru.practicum.server.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.HyperLogLog;
+import ru.practicum.dto.VisitorBitmap;
+import ru.practicum.server.model.AppUri;
+import ru.practicum.server.model.TimeRange;
+import ru.practicum.server.repository.AggregateCheckpointRepository;
+import ru.practicum.server.repository.SqlDialect;
+import ru.practicum.server.repository.StatsJdbcRepository;
+import ru.practicum.server.repository.StatsPartitionRepository;
+import ru.practicum.server.repository.StatsRepository;
+import ru.practicum.server.repository.StatsSketchRepository;
+import ru.practicum.server.repository.StatsVisitorRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps range partitions of {@code hits} ahead of time on PostgreSQL, seals daily aggregates and enforces
+ * raw data retention.
+ * A day is sealed once it is over by the seal delay: its sketches and visitor bitmaps are built from its raw hits,
+ * one day per transaction, and hits arriving later for it are merged into them when stored. Until then queries
+ * read the day from raw hits, so storing a hit never rewrites a sketch or a bitmap of the current day.
+ * Every hit, however late, is added to the hourly rollups when it is stored, so retention only removes raw rows
+ * of sealed days and never rebuilds aggregates from the rows that are left.
+ * Expired partitions are dropped one at a time and stray older rows are deleted one day per transaction.
+ */
+@Slf4j
+@Component
+public class HitStorageMaintainer implements SmartInitializingSingleton {
+
+    private final StatsJdbcRepository statsJdbcRepository;
+    private final StatsPartitionRepository statsPartitionRepository;
+    private final StatsRepository statsRepository;
+    private final StatsSketchRepository statsSketchRepository;
+    private final StatsVisitorRepository statsVisitorRepository;
+    private final AggregateCheckpointRepository aggregateCheckpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean partitioned;
+    private final ChronoUnit partitionUnit;
+    private final int partitionsAhead;
+    private final int retentionDays;
+    private final Duration sealDelay;
+    private final int sealBatchSize;
+    private final Counter sealedDays;
+    private final Counter droppedPartitions;
+    private final Counter deletedHits;
+    private volatile LocalDateTime sealedTo;
+
+    public HitStorageMaintainer(StatsJdbcRepository statsJdbcRepository,
+                                StatsPartitionRepository statsPartitionRepository,
+                                StatsRepository statsRepository,
+                                StatsSketchRepository statsSketchRepository,
+                                StatsVisitorRepository statsVisitorRepository,
+                                AggregateCheckpointRepository aggregateCheckpointRepository,
+                                TransactionTemplate transactionTemplate,
+                                SqlDialect dialect,
+                                MeterRegistry meterRegistry,
+                                @Value("${stats.partition.unit:DAYS}") ChronoUnit partitionUnit,
+                                @Value("${stats.partition.ahead:3}") int partitionsAhead,
+                                @Value("${stats.retention.days:0}") int retentionDays,
+                                @Value("${stats.seal.delay-minutes:60}") long sealDelayMinutes,
+                                @Value("${stats.seal.batch-size:100}") int sealBatchSize) {
+        if (partitionUnit != ChronoUnit.DAYS && partitionUnit != ChronoUnit.MONTHS) {
+            throw new IllegalArgumentException("stats.partition.unit must be DAYS or MONTHS: " + partitionUnit);
+        }
+        this.statsJdbcRepository = statsJdbcRepository;
+        this.statsPartitionRepository = statsPartitionRepository;
+        this.statsRepository = statsRepository;
+        this.statsSketchRepository = statsSketchRepository;
+        this.statsVisitorRepository = statsVisitorRepository;
+        this.aggregateCheckpointRepository = aggregateCheckpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.partitioned = dialect.isPostgres();
+        this.partitionUnit = partitionUnit;
+        this.partitionsAhead = partitionsAhead;
+        this.retentionDays = retentionDays;
+        this.sealDelay = Duration.ofMinutes(sealDelayMinutes);
+        this.sealBatchSize = sealBatchSize;
+
+        this.sealedDays = Counter.builder("stats.seal.days")
+                .description("Days whose aggregates were built from their raw hits")
+                .register(meterRegistry);
+        this.droppedPartitions = Counter.builder("stats.retention.partitions.dropped")
+                .description("Raw hit partitions dropped by retention")
+                .register(meterRegistry);
+        this.deletedHits = Counter.builder("stats.retention.hits.deleted")
+                .description("Raw hits deleted by retention outside dropped partitions")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (partitioned) {
+            createPartitions();
+        }
+        sealedTo = aggregateCheckpointRepository.find().orElseGet(() -> {
+            LocalDateTime initial = initialSealedTo();
+            aggregateCheckpointRepository.save(initial);
+            return initial;
+        });
+        log.info("Daily aggregates sealed up to {}", sealedTo);
+    }
+
+    @Scheduled(initialDelayString = "${stats.maintenance.interval-ms:3600000}",
+            fixedDelayString = "${stats.maintenance.interval-ms:3600000}")
+    public void maintain() {
+        try {
+            if (partitioned) {
+                createPartitions();
+            }
+            seal();
+            applyRetention();
+        } catch (DataAccessException e) {
+            log.error("Stats storage maintenance failed", e);
+        }
+    }
+
+    // raw hits before it are gone; days that are not sealed yet keep them past the retention period
+    public Optional<LocalDateTime> getRetentionHorizon() {
+        return retentionStart().map(start -> start.isAfter(sealedTo) ? sealedTo : start);
+    }
+
+    // days before it have their aggregates built, later days are only kept as raw hits
+    public LocalDateTime getSealedTo() {
+        return sealedTo;
+    }
+
+    private Optional<LocalDateTime> retentionStart() {
+        if (retentionDays <= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(LocalDateTime.now().truncatedTo(ChronoUnit.DAYS).minusDays(retentionDays));
+    }
+
+    // raw hits before the retention period may be left over without the rest of their day,
+    // the aggregates of those days were built when their hits were stored
+    private LocalDateTime initialSealedTo() {
+        LocalDateTime today = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS);
+        LocalDateTime first = statsJdbcRepository.getTimeRange()
+                .map(range -> range.start().truncatedTo(ChronoUnit.DAYS))
+                .filter(today::isAfter)
+                .orElse(today);
+        return retentionStart().filter(first::isBefore).orElse(first);
+    }
+
+    private void seal() {
+        LocalDateTime closed = LocalDateTime.now().minus(sealDelay).truncatedTo(ChronoUnit.DAYS);
+        while (sealedTo.isBefore(closed)) {
+            sealedTo = transactionTemplate.execute(status -> sealDay());
+            sealedDays.increment();
+        }
+    }
+
+    // the checkpoint row stays locked until commit, so a hit stored meanwhile for this day waits for it
+    // and is then merged into the aggregates as a late one
+    private LocalDateTime sealDay() {
+        LocalDateTime day = aggregateCheckpointRepository.lock().orElseThrow();
+        LocalDateTime next = day.plusDays(1);
+        statsSketchRepository.deleteDay(day);
+        statsVisitorRepository.deleteDay(day);
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        Map<AppUri, VisitorBitmap> visitors = new HashMap<>();
+        // visitors come grouped by app and uri, so a flushed sketch or bitmap is complete
+        statsRepository.streamVisitors(day, next, visitor -> {
+            AppUri key = new AppUri(visitor.getApp(), visitor.getUri());
+            if (sketches.size() >= sealBatchSize && !sketches.containsKey(key)) {
+                statsSketchRepository.insert(day, sketches);
+                statsVisitorRepository.insert(day, visitors);
+                sketches.clear();
+                visitors.clear();
+            }
+            sketches.computeIfAbsent(key, k -> new HyperLogLog()).offer(visitor.getIp());
+            visitors.computeIfAbsent(key, k -> new VisitorBitmap()).offer(visitor.getIp());
+        });
+        statsSketchRepository.insert(day, sketches);
+        statsVisitorRepository.insert(day, visitors);
+        aggregateCheckpointRepository.save(next);
+        log.info("Daily aggregates of {} sealed", day);
+        return next;
+    }
+
+    private void createPartitions() {
+        LocalDateTime start = partitionStart(LocalDateTime.now());
+        for (int i = 0; i <= partitionsAhead; i++) {
+            LocalDateTime end = start.plus(1, partitionUnit);
+            TimeRange range = new TimeRange(start, end);
+            try {
+                statsPartitionRepository.create(range);
+            } catch (DataAccessException e) {
+                log.warn("Can't create hits partition {} - {}: {}", start, end, e.getMessage());
+            }
+            start = end;
+        }
+    }
+
+    private void applyRetention() {
+        Optional<LocalDateTime> horizon = getRetentionHorizon();
+        if (horizon.isEmpty()) {
+            return;
+        }
+        LocalDateTime to = horizon.get();
+        if (partitioned) {
+            for (TimeRange range : statsPartitionRepository.getPartitions()) {
+                if (!range.end().isAfter(to)) {
+                    statsPartitionRepository.drop(range);
+                    droppedPartitions.increment();
+                }
+            }
+        }
+        // late hits older than the horizon land in the default partition, or in the only table on H2
+        Optional<LocalDateTime> first;
+        while ((first = statsJdbcRepository.getFirstBefore(to)).isPresent()) {
+            LocalDateTime day = first.get().truncatedTo(ChronoUnit.DAYS);
+            LocalDateTime dayEnd = day.plusDays(1).isBefore(to) ? day.plusDays(1) : to;
+            deletedHits.increment(statsJdbcRepository.deleteBetween(day, dayEnd));
+        }
+        log.info("Raw hits before {} removed", to);
+    }
+
+    private LocalDateTime partitionStart(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return partitionUnit == ChronoUnit.MONTHS ? day.withDayOfMonth(1) : day;
+    }
+}
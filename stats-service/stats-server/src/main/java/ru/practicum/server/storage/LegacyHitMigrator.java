@@ -0,0 +1,74 @@
+package ru.practicum.server.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.practicum.server.exception.ValidationException;
+import ru.practicum.server.ingest.HitStore;
+import ru.practicum.server.mapper.StatsMapper;
+import ru.practicum.server.model.Stats;
+import ru.practicum.server.repository.LegacyHitRepository;
+import ru.practicum.server.repository.LegacyHitRepository.LegacyHit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies the rows of the first version of {@code hits}, moved aside to {@code hits_legacy} at startup,
+ * through {@link HitStore}, so they are counted in every aggregate like hits received today.
+ * Each batch is deleted from {@code hits_legacy} in the transaction that stores it, so an interrupted copy
+ * resumes on the next start without counting a row twice. The table is dropped once it is empty.
+ */
+@Slf4j
+@Component
+public class LegacyHitMigrator {
+
+    private final LegacyHitRepository legacyHitRepository;
+    private final HitStore hitStore;
+    private final int batchSize;
+
+    public LegacyHitMigrator(LegacyHitRepository legacyHitRepository,
+                             HitStore hitStore,
+                             @Value("${stats.ingest.batch-size:500}") int batchSize) {
+        this.legacyHitRepository = legacyHitRepository;
+        this.hitStore = hitStore;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!legacyHitRepository.exists()) {
+            return;
+        }
+        long copied = 0;
+        long skipped = 0;
+        List<LegacyHit> batch;
+        while (!(batch = legacyHitRepository.findBatch(batchSize)).isEmpty()) {
+            List<Stats> hits = new ArrayList<>(batch.size());
+            for (LegacyHit legacy : batch) {
+                try {
+                    hits.add(Stats.builder()
+                            .app(legacy.app())
+                            .uri(legacy.uri())
+                            .ip(StatsMapper.toBytes(legacy.ip()))
+                            .timestamp(legacy.timestamp())
+                            .build());
+                } catch (ValidationException e) {
+                    log.warn("Legacy hit {} skipped: {}", legacy.id(), e.getMessage());
+                    skipped++;
+                }
+            }
+            long lastId = batch.get(batch.size() - 1).id();
+            if (hits.isEmpty()) {
+                legacyHitRepository.deleteUpTo(lastId);
+            } else {
+                hitStore.save(hits, () -> legacyHitRepository.deleteUpTo(lastId));
+            }
+            copied += hits.size();
+        }
+        legacyHitRepository.drop();
+        log.info("{} legacy hits copied, {} skipped, hits_legacy dropped", copied, skipped);
+    }
+}
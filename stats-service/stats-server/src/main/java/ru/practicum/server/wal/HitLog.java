@@ -0,0 +1,253 @@
+package ru.practicum.server.wal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.server.model.Stats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of hits kept in memory-mapped segment files.
+ * Every record is {@code [length][crc32c][payload]}; the length is written last,
+ * so a record torn by a crash reads as the end of the segment.
+ * Writers are serialized with a lock rather than a monitor, so a virtual thread forcing the log to disk
+ * doesn't pin its carrier thread.
+ */
+@Slf4j
+public class HitLog implements Closeable {
+    private static final String SUFFIX = ".wal";
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Segment active;
+
+    public HitLog(Path dir, int segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long seq = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                segments.put(seq, Segment.open(seq, file, Files.size(file)));
+            }
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(1);
+        } else {
+            active = segments.lastEntry().getValue();
+            log.info("Recovered {} hit log segments from {}", segments.size(), dir);
+        }
+    }
+
+    public void append(List<Stats> hits) {
+        lock.lock();
+        try {
+            for (Stats hit : hits) {
+                byte[] payload = encode(hit);
+                int length = RECORD_HEADER + payload.length;
+                if (length + Integer.BYTES > segmentSize) {
+                    throw new IllegalArgumentException("Hit doesn't fit into a log segment: " + length + " bytes");
+                }
+                if (active.end + length + Integer.BYTES > active.buffer.capacity()) {
+                    roll();
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                int offset = active.end;
+                active.buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+                active.buffer.put(offset + RECORD_HEADER, payload);
+                active.buffer.putInt(offset, payload.length);
+                active.end = offset + length;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void force() {
+        lock.lock();
+        try {
+            active.buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public WalPosition start() {
+        return new WalPosition(segments.firstKey(), 0);
+    }
+
+    public WalPosition end() {
+        Segment current = active;
+        return new WalPosition(current.seq, current.end);
+    }
+
+    // reads up to max hits starting at position and returns the position after the last one read
+    public WalPosition read(WalPosition position, int max, List<Stats> hits) {
+        long seq = position.segment();
+        int offset = position.offset();
+        while (hits.size() < max) {
+            Segment segment = segments.get(seq);
+            // active is read before end: once a segment is no longer active its end is final
+            Segment current = active;
+            if (segment == null || offset >= segment.end) {
+                Map.Entry<Long, Segment> next = segments.higherEntry(seq);
+                if (next == null || segment == current) {
+                    break;
+                }
+                seq = next.getKey();
+                offset = 0;
+                continue;
+            }
+            int length = segment.buffer.getInt(offset);
+            byte[] payload = new byte[length];
+            segment.buffer.get(offset + RECORD_HEADER, payload);
+            hits.add(decode(payload));
+            offset += RECORD_HEADER + length;
+        }
+        return new WalPosition(seq, offset);
+    }
+
+    public void deleteBefore(long seq) {
+        for (Map.Entry<Long, Segment> segment : segments.headMap(seq).entrySet()) {
+            segments.remove(segment.getKey());
+            try {
+                Files.deleteIfExists(segment.getValue().path);
+            } catch (IOException e) {
+                log.warn("Can't delete applied hit log segment {}", segment.getValue().path, e);
+            }
+        }
+    }
+
+    // bytes appended after position
+    public long lag(WalPosition position) {
+        return segments.tailMap(position.segment()).values().stream().mapToLong(segment -> segment.end).sum()
+                - position.offset();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    private void roll() {
+        active.buffer.force();
+        active = createSegment(active.seq + 1);
+    }
+
+    private Segment createSegment(long seq) {
+        Path file = dir.resolve(String.format("%020d%s", seq, SUFFIX));
+        try {
+            Segment segment = Segment.open(seq, file, segmentSize);
+            segments.put(seq, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't create hit log segment " + file, e);
+        }
+    }
+
+    private static byte[] encode(Stats hit) {
+        byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Short.BYTES + app.length + uri.length
+                + 1 + hit.getIp().length + Long.BYTES + Integer.BYTES);
+        buffer.putShort((short) app.length).put(app)
+                .putShort((short) uri.length).put(uri)
+                .put((byte) hit.getIp().length).put(hit.getIp())
+                .putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC))
+                .putInt(hit.getTimestamp().getNano());
+        return buffer.array();
+    }
+
+    private static Stats decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        byte[] app = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(app);
+        byte[] uri = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(uri);
+        byte[] ip = new byte[buffer.get()];
+        buffer.get(ip);
+        return Stats.builder()
+                .app(new String(app, StandardCharsets.UTF_8))
+                .uri(new String(uri, StandardCharsets.UTF_8))
+                .ip(ip)
+                .timestamp(LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC))
+                .build();
+    }
+
+    private static final class Segment {
+        private final long seq;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private volatile int end;
+
+        private Segment(long seq, Path path, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(long seq, Path path, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                Segment segment = new Segment(seq, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+                segment.end = segment.scan();
+                return segment;
+            }
+        }
+
+        // finds the end of the last complete record
+        private int scan() {
+            int offset = 0;
+            while (offset + RECORD_HEADER <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length == 0) {
+                    break;
+                }
+                if (!isValid(offset, length)) {
+                    log.warn("Hit log segment {} is torn at offset {}", path, offset);
+                    // later appends must not run into the remains of the torn record
+                    buffer.put(offset, new byte[buffer.capacity() - offset]);
+                    break;
+                }
+                offset += RECORD_HEADER + length;
+            }
+            return offset;
+        }
+
+        private boolean isValid(int offset, int length) {
+            if (length < 0 || offset + RECORD_HEADER + length > buffer.capacity()) {
+                return false;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + RECORD_HEADER, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            return (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES);
+        }
+    }
+}
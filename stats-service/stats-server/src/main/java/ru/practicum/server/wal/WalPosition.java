@@ -0,0 +1,4 @@
+package ru.practicum.server.wal;
+
+public record WalPosition(long segment, int offset) {
+}
@@ -0,0 +1,3 @@
+-- uri prefix patterns like /events/* are LIKE 'prefix%' conditions, which need a pattern index
+-- whatever the collation of the database
+CREATE INDEX IF NOT EXISTS idx_uris_uri_pattern ON uris (uri text_pattern_ops);
@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS hits (
+    id BIGSERIAL,
+    app_id INTEGER not null,
+    uri_id INTEGER not null,
+    ip BYTEA not null,
+    time_stamp TIMESTAMP WITHOUT TIME ZONE not null,
+    CONSTRAINT pk_hits PRIMARY KEY (id, time_stamp)
+) PARTITION BY RANGE (time_stamp);
+
+CREATE TABLE IF NOT EXISTS hits_default PARTITION OF hits DEFAULT;
+
+CREATE INDEX IF NOT EXISTS idx_hits_time_stamp ON hits (time_stamp);
+CREATE INDEX IF NOT EXISTS idx_hits_uri_id_time_stamp ON hits (uri_id, time_stamp);
@@ -1,9 +1,63 @@
-DROP TABLE IF EXISTS hits;
+CREATE TABLE IF NOT EXISTS apps (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    app VARCHAR(64) not null,
+    CONSTRAINT uq_apps_app UNIQUE (app)
+);
+
+CREATE TABLE IF NOT EXISTS uris (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    uri VARCHAR(256) not null,
+    CONSTRAINT uq_uris_uri UNIQUE (uri)
+);
 
 CREATE TABLE IF NOT EXISTS hits (
     id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    app_id INTEGER not null,
+    uri_id INTEGER not null,
+    ip BYTEA not null,
+    time_stamp TIMESTAMP WITHOUT TIME ZONE not null
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_time_stamp ON hits (time_stamp);
+CREATE INDEX IF NOT EXISTS idx_hits_uri_id_time_stamp ON hits (uri_id, time_stamp);
+
+CREATE TABLE IF NOT EXISTS hits_hourly (
     app VARCHAR(64) not null,
     uri VARCHAR(256) not null,
-    ip  VARCHAR(64) not null,
-    time_stamp TIMESTAMP WITHOUT TIME ZONE not null
-);
\ No newline at end of file
+    hour_start TIMESTAMP WITHOUT TIME ZONE not null,
+    hits BIGINT not null,
+    CONSTRAINT pk_hits_hourly PRIMARY KEY (uri, hour_start, app)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_hourly_hour_start ON hits_hourly (hour_start);
+
+CREATE TABLE IF NOT EXISTS hit_sketches (
+    app VARCHAR(64) not null,
+    uri VARCHAR(256) not null,
+    day_start TIMESTAMP WITHOUT TIME ZONE not null,
+    sketch BYTEA not null,
+    CONSTRAINT pk_hit_sketches PRIMARY KEY (uri, day_start, app)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_sketches_day_start ON hit_sketches (day_start);
+
+CREATE TABLE IF NOT EXISTS hit_visitors (
+    app VARCHAR(64) not null,
+    uri VARCHAR(256) not null,
+    day_start TIMESTAMP WITHOUT TIME ZONE not null,
+    visitors BYTEA not null,
+    CONSTRAINT pk_hit_visitors PRIMARY KEY (uri, day_start, app)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_visitors_day_start ON hit_visitors (day_start);
+
+CREATE TABLE IF NOT EXISTS wal_checkpoint (
+    id INTEGER PRIMARY KEY,
+    segment BIGINT not null,
+    position INTEGER not null
+);
+
+CREATE TABLE IF NOT EXISTS aggregate_checkpoint (
+    id INTEGER PRIMARY KEY,
+    sealed_to TIMESTAMP WITHOUT TIME ZONE not null
+);
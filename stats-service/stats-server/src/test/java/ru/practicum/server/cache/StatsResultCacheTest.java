@@ -0,0 +1,104 @@
+package ru.practicum.server.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.server.model.Stats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsResultCacheTest {
+    private static final String APP = "ewm-main-service";
+    private static final LocalDateTime FROM = LocalDateTime.of(2024, 1, 1, 10, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final StatsResultCache cache = new StatsResultCache(new SimpleMeterRegistry(), true, 60, 10);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void addsCommittedHitsToCachedCounts() {
+        StatsQuery query = StatsQuery.of(FROM, TO, List.of("/events/1", "/events/2"), false, false, null);
+        cache.get(query, loader(view("/events/1", 3)));
+
+        commit(hit("/events/1", FROM.plusMinutes(5)), hit("/events/2", FROM.plusMinutes(6)),
+                hit("/events/3", FROM.plusMinutes(7)), hit("/events/1", TO));
+
+        assertThat(cache.get(query, loader())).containsExactly(view("/events/1", 4), view("/events/2", 1));
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void patchesPrefixPatternWithUrisFirstSeenAfterLoad() {
+        StatsQuery query = StatsQuery.of(FROM, TO, List.of("/events/*"), false, false, null);
+        cache.get(query, loader(view("/events/1", 2)));
+
+        commit(hit("/events/9", FROM.plusMinutes(1)), hit("/users/1", FROM.plusMinutes(1)));
+
+        assertThat(cache.get(query, loader())).containsExactly(view("/events/1", 2), view("/events/9", 1));
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void dropsUniqueResultsHitByNewHits() {
+        StatsQuery query = StatsQuery.of(FROM, TO, null, true, false, null);
+        cache.get(query, loader(view("/events/1", 1)));
+
+        commit(hit("/events/1", FROM.plusMinutes(1)));
+
+        assertThat(cache.get(query, loader(view("/events/1", 2)))).containsExactly(view("/events/1", 2));
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void doesNotCacheResultLoadedWhileMatchingBatchCommits() {
+        StatsQuery query = StatsQuery.of(FROM, TO, List.of("/events/1"), false, false, null);
+        List<Stats> batch = List.of(hit("/events/1", FROM.plusMinutes(1)));
+
+        cache.get(query, () -> {
+            cache.beforeCommit(batch);
+            return loader(view("/events/1", 1)).get();
+        });
+        cache.onHits(batch);
+        cache.afterCompletion(batch);
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void keysOnSortedDistinctUris() {
+        assertThat(StatsQuery.of(FROM, TO, List.of("/b", "/a", "/b"), false, false, null))
+                .isEqualTo(StatsQuery.of(FROM, TO, List.of("/a", "/b"), false, false, null));
+    }
+
+    private void commit(Stats... hits) {
+        List<Stats> batch = List.of(hits);
+        cache.beforeCommit(batch);
+        cache.onHits(batch);
+        cache.afterCompletion(batch);
+    }
+
+    private Supplier<List<ViewStatsDto>> loader(ViewStatsDto... stats) {
+        return () -> {
+            loads.incrementAndGet();
+            return List.of(stats);
+        };
+    }
+
+    private static ViewStatsDto view(String uri, long hits) {
+        return new ViewStatsDto(APP, uri, hits);
+    }
+
+    private static Stats hit(String uri, LocalDateTime timestamp) {
+        return Stats.builder()
+                .app(APP)
+                .uri(uri)
+                .ip(new byte[]{10, 0, 0, 1})
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.server.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.server.model.Stats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class QueuedHitIngestorTest {
+
+    private final HitStore hitStore = mock(HitStore.class);
+    private final List<String> saved = new CopyOnWriteArrayList<>();
+
+    @Test
+    void writesQueuedHitsAndExitsWhenWriterIsInterrupted() throws InterruptedException {
+        CountDownLatch queued = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            List<Stats> hits = invocation.getArgument(0);
+            if (saved.isEmpty()) {
+                queued.await();
+                Thread.currentThread().interrupt();
+            }
+            hits.forEach(hit -> saved.add(hit.getUri()));
+            return null;
+        }).when(hitStore).save(anyList());
+
+        QueuedHitIngestor ingestor = new QueuedHitIngestor(hitStore, new SimpleMeterRegistry(),
+                100, 2, 10, 2000, 1, 1);
+        ingestor.start();
+        ingestor.ingest(hit("/events/1"));
+        ingestor.ingestAll(List.of(hit("/events/2"), hit("/events/3"), hit("/events/4"), hit("/events/5")));
+        queued.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (ingestor.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(ingestor.isRunning()).isFalse();
+        ingestor.stop();
+
+        assertThat(saved).containsExactlyInAnyOrder("/events/1", "/events/2", "/events/3", "/events/4", "/events/5");
+    }
+
+    private static Stats hit(String uri) {
+        return Stats.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(new byte[]{10, 0, 0, 1})
+                .timestamp(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .build();
+    }
+}
@@ -0,0 +1,183 @@
+package ru.practicum.server.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.server.model.Stats;
+import ru.practicum.server.repository.WalCheckpointRepository;
+import ru.practicum.server.wal.HitLog;
+import ru.practicum.server.wal.WalPosition;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WalHitIngestorTest {
+
+    @TempDir
+    Path dir;
+
+    private final HitStore hitStore = mock(HitStore.class);
+    private final WalCheckpointRepository walCheckpointRepository = mock(WalCheckpointRepository.class);
+    private final List<String> applied = new CopyOnWriteArrayList<>();
+    private final List<WalPosition> checkpoints = new CopyOnWriteArrayList<>();
+
+    @Test
+    void storesCheckpointInTransactionOfAppliedHits() throws IOException {
+        when(walCheckpointRepository.find()).thenReturn(Optional.empty());
+        applyInTransaction(0);
+
+        WalHitIngestor ingestor = ingestor();
+        ingestor.start();
+        ingestor.ingestAll(List.of(hit("/events/1"), hit("/events/2")));
+        ingestor.stop();
+
+        assertThat(applied).containsExactly("/events/1", "/events/2");
+        assertThat(checkpoints).isNotEmpty();
+        assertThat(checkpoints.get(checkpoints.size() - 1).offset()).isPositive();
+    }
+
+    @Test
+    void replaysLoggedHitsThatWereNotAppliedBeforeRestart() throws IOException {
+        when(walCheckpointRepository.find()).thenReturn(Optional.empty())
+                .thenThrow(new IllegalStateException("database is down"));
+        doAnswer(invocation -> {
+            throw new IllegalStateException("database is down");
+        }).when(hitStore).save(anyList(), any(Runnable.class));
+
+        WalHitIngestor crashed = ingestor();
+        crashed.start();
+        crashed.ingestAll(List.of(hit("/events/1"), hit("/events/2")));
+        crashed.stop();
+        verify(walCheckpointRepository, never()).save(any());
+
+        doReturn(Optional.empty()).when(walCheckpointRepository).find();
+        applyInTransaction(0);
+        WalHitIngestor restarted = ingestor();
+        restarted.start();
+        restarted.stop();
+
+        assertThat(applied).containsExactly("/events/1", "/events/2");
+    }
+
+    @Test
+    void resumesAfterCheckpointWithoutApplyingHitsTwice() throws IOException {
+        when(walCheckpointRepository.find()).thenReturn(Optional.empty());
+        applyInTransaction(0);
+        WalHitIngestor first = ingestor();
+        first.start();
+        first.ingestAll(List.of(hit("/events/1"), hit("/events/2")));
+        first.stop();
+        WalPosition checkpoint = checkpoints.get(checkpoints.size() - 1);
+
+        applied.clear();
+        when(walCheckpointRepository.find()).thenReturn(Optional.of(checkpoint));
+        WalHitIngestor restarted = ingestor();
+        restarted.start();
+        restarted.ingestAll(List.of(hit("/events/3")));
+        restarted.stop();
+
+        assertThat(applied).containsExactly("/events/3");
+    }
+
+    @Test
+    void retriesFailedBatchFromTheSamePosition() throws IOException, InterruptedException {
+        when(walCheckpointRepository.find()).thenReturn(Optional.empty());
+        applyInTransaction(1);
+
+        WalHitIngestor ingestor = ingestor();
+        ingestor.start();
+        ingestor.ingestAll(List.of(hit("/events/1"), hit("/events/2")));
+        // a batch failing during shutdown is left for the next start, so the retry has to happen before it
+        awaitApplied(2);
+        ingestor.stop();
+
+        assertThat(applied).containsExactly("/events/1", "/events/2");
+        assertThat(checkpoints).isNotEmpty();
+    }
+
+    @Test
+    void movesHitRejectedByDatabaseToDeadLetterLog() throws IOException, InterruptedException {
+        when(walCheckpointRepository.find()).thenReturn(Optional.empty());
+        applyInTransaction(0);
+        doAnswer(invocation -> {
+            List<Stats> hits = invocation.getArgument(0);
+            if (hits.stream().anyMatch(hit -> hit.getUri().equals("/poison"))) {
+                throw new IllegalStateException("value too long for type character varying(256)");
+            }
+            Runnable inTransaction = invocation.getArgument(1);
+            inTransaction.run();
+            hits.forEach(hit -> applied.add(hit.getUri()));
+            return null;
+        }).when(hitStore).save(anyList(), any(Runnable.class));
+
+        WalHitIngestor ingestor = ingestor();
+        ingestor.start();
+        ingestor.ingestAll(List.of(hit("/events/1"), hit("/poison"), hit("/events/2")));
+        awaitApplied(2);
+        ingestor.ingestAll(List.of(hit("/events/3")));
+        awaitApplied(3);
+        ingestor.stop();
+
+        assertThat(applied).containsExactly("/events/1", "/events/2", "/events/3");
+        HitLog deadLetterLog = new HitLog(dir.resolve("dead-letter"), 1024 * 1024);
+        List<Stats> deadLetters = new ArrayList<>();
+        deadLetterLog.read(deadLetterLog.start(), 10, deadLetters);
+        assertThat(deadLetters).extracting(Stats::getUri).containsExactly("/poison");
+    }
+
+    // the store writes the hits and runs the checkpoint update in one transaction; the first failures throw
+    // before the checkpoint is written, as a rolled back transaction would leave it
+    private void applyInTransaction(int failures) {
+        AtomicInteger left = new AtomicInteger(failures);
+        doAnswer(invocation -> {
+            if (left.getAndDecrement() > 0) {
+                throw new IllegalStateException("serialization failure");
+            }
+            List<Stats> hits = invocation.getArgument(0);
+            Runnable inTransaction = invocation.getArgument(1);
+            inTransaction.run();
+            hits.forEach(hit -> applied.add(hit.getUri()));
+            return null;
+        }).when(hitStore).save(anyList(), any(Runnable.class));
+        doAnswer(invocation -> checkpoints.add(invocation.getArgument(0)))
+                .when(walCheckpointRepository).save(any());
+    }
+
+    private void awaitApplied(int hits) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (applied.size() < hits && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private WalHitIngestor ingestor() throws IOException {
+        return new WalHitIngestor(hitStore, walCheckpointRepository, new SimpleMeterRegistry(), dir.toString(),
+                1, 100, 10, 0, 1, 5000, 2);
+    }
+
+    private static Stats hit(String uri) {
+        return Stats.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(new byte[]{10, 0, 0, 1})
+                .timestamp(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .build();
+    }
+}
@@ -0,0 +1,119 @@
+package ru.practicum.server.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.server.model.Stats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HitLogTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysAppendedHitsAfterReopen() throws IOException {
+        HitLog hitLog = new HitLog(dir, SEGMENT_SIZE);
+        hitLog.append(List.of(hit("/events/1", 1), hit("/events/2", 2)));
+        hitLog.append(List.of(hit("/events/3", 3)));
+        hitLog.close();
+
+        HitLog reopened = new HitLog(dir, SEGMENT_SIZE);
+        List<Stats> hits = new ArrayList<>();
+        WalPosition end = reopened.read(reopened.start(), 10, hits);
+
+        assertThat(hits).extracting(Stats::getUri).containsExactly("/events/1", "/events/2", "/events/3");
+        assertThat(hits.get(1).getIp()).containsExactly(10, 0, 0, 2);
+        assertThat(hits.get(1).getTimestamp()).isEqualTo(timestamp(2));
+        assertThat(end).isEqualTo(reopened.end());
+        assertThat(reopened.lag(end)).isZero();
+    }
+
+    @Test
+    void readsFromPositionInBatches() throws IOException {
+        HitLog hitLog = new HitLog(dir, SEGMENT_SIZE);
+        hitLog.append(IntStream.rangeClosed(1, 5).mapToObj(i -> hit("/events/" + i, i)).toList());
+
+        List<Stats> first = new ArrayList<>();
+        WalPosition next = hitLog.read(hitLog.start(), 2, first);
+        List<Stats> rest = new ArrayList<>();
+        hitLog.read(next, 10, rest);
+
+        assertThat(first).extracting(Stats::getUri).containsExactly("/events/1", "/events/2");
+        assertThat(rest).extracting(Stats::getUri).containsExactly("/events/3", "/events/4", "/events/5");
+    }
+
+    @Test
+    void readsAcrossSegmentsAndDeletesAppliedOnes() throws IOException {
+        HitLog hitLog = new HitLog(dir, SEGMENT_SIZE);
+        List<Stats> appended = IntStream.rangeClosed(1, 200).mapToObj(i -> hit("/events/" + i, i)).toList();
+        hitLog.append(appended);
+        assertThat(hitLog.segmentCount()).isGreaterThan(1);
+
+        List<Stats> hits = new ArrayList<>();
+        WalPosition end = hitLog.read(hitLog.start(), 1000, hits);
+        assertThat(hits).extracting(Stats::getUri).isEqualTo(appended.stream().map(Stats::getUri).toList());
+
+        hitLog.deleteBefore(end.segment());
+        assertThat(hitLog.segmentCount()).isEqualTo(1);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    @Test
+    void dropsTornRecordOnReopen() throws IOException {
+        HitLog hitLog = new HitLog(dir, SEGMENT_SIZE);
+        hitLog.append(List.of(hit("/events/1", 1)));
+        WalPosition torn = hitLog.end();
+        hitLog.append(List.of(hit("/events/2", 2)));
+        hitLog.close();
+        corruptPayload(torn);
+
+        HitLog reopened = new HitLog(dir, SEGMENT_SIZE);
+        assertThat(reopened.end()).isEqualTo(torn);
+        reopened.append(List.of(hit("/events/3", 3)));
+        List<Stats> hits = new ArrayList<>();
+        reopened.read(reopened.start(), 10, hits);
+
+        assertThat(hits).extracting(Stats::getUri).containsExactly("/events/1", "/events/3");
+    }
+
+    // flips a payload byte of the record at position, so its checksum no longer matches
+    private void corruptPayload(WalPosition position) throws IOException {
+        Path segment = dir.resolve(String.format("%020d.wal", position.segment()));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            long offset = position.offset() + 2L * Integer.BYTES;
+            channel.read(b, offset);
+            b.put(0, (byte) (b.get(0) ^ 0xFF)).rewind();
+            channel.write(b, offset);
+        }
+    }
+
+    private static Stats hit(String uri, int visitor) {
+        return Stats.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(new byte[]{10, 0, 0, (byte) visitor})
+                .timestamp(timestamp(visitor))
+                .build();
+    }
+
+    private static LocalDateTime timestamp(int second) {
+        return LocalDateTime.of(2024, 1, 1, 12, 0, second % 60, 123_456_000);
+    }
+}